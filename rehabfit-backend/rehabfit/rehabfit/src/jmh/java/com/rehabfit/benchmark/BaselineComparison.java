@@ -0,0 +1,102 @@
+package com.rehabfit.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result with the committed baseline and fails when a benchmark lost more
+ * than the allowed fraction of its score (lower throughput, higher average time) or allocates
+ * that much more per operation. Benchmarks missing from the baseline are only reported, and
+ * benchmarks run with other forks, warmup or measurement settings than their baseline fail
+ * outright, since their scores do not compare.
+ *
+ * <p>Arguments: baseline file, result file, allowed fraction (e.g. {@code 0.20}).
+ */
+public final class BaselineComparison {
+
+    // Allocation changes below this many bytes per op are noise from the GC profiler
+    private static final double MIN_ALLOC_DELTA_BYTES = 64;
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: BaselineComparison <baseline.json> <result.json> [threshold]");
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.20;
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(mapper.readTree(new File(args[0])));
+        Map<String, JsonNode> current = index(mapper.readTree(new File(args[1])));
+
+        List<String> regressions = new ArrayList<>();
+        List<String> mismatched = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            String key = entry.getKey();
+            JsonNode now = entry.getValue();
+            JsonNode before = baseline.get(key);
+            double score = now.path("primaryMetric").path("score").asDouble();
+            String unit = now.path("primaryMetric").path("scoreUnit").asText();
+            if (before == null) {
+                System.out.printf("%-70s %12.3f %-8s (new)%n", key, score, unit);
+                continue;
+            }
+            String settings = settings(now);
+            if (!settings.equals(settings(before))) {
+                System.out.printf("%-70s %12.3f %-8s (run with %s, baseline %s)%n", key, score, unit, settings, settings(before));
+                mismatched.add(key);
+                continue;
+            }
+            double baseScore = before.path("primaryMetric").path("score").asDouble();
+            double change = baseScore == 0 ? 0 : (score - baseScore) / baseScore;
+            boolean slower = "thrpt".equals(now.path("mode").asText()) ? change < -threshold : change > threshold;
+
+            double alloc = allocation(now);
+            double baseAlloc = allocation(before);
+            boolean allocates = alloc >= 0 && baseAlloc >= 0
+                && alloc - baseAlloc > Math.max(MIN_ALLOC_DELTA_BYTES, baseAlloc * threshold);
+
+            System.out.printf("%-70s %12.3f %-8s %+7.1f%%  alloc %s B/op%s%n", key, score, unit, change * 100,
+                alloc < 0 ? "n/a" : String.format("%.0f (was %.0f)", alloc, baseAlloc),
+                slower || allocates ? "  REGRESSION" : "");
+            if (slower) regressions.add(key + " score " + String.format("%+.1f%%", change * 100));
+            if (allocates) regressions.add(key + " allocation " + String.format("%.0f -> %.0f B/op", baseAlloc, alloc));
+        }
+        if (!mismatched.isEmpty()) {
+            throw new IllegalStateException("Run settings differ from the baseline, re-record it with the same jmh.args: " + mismatched);
+        }
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Benchmark regressions beyond " + Math.round(threshold * 100) + "%: " + regressions);
+        }
+    }
+
+    // One entry per benchmark, mode and parameter set
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText())
+                .append(" [").append(result.path("mode").asText()).append(']');
+            result.path("params").fields().forEachRemaining(p -> key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText()));
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+
+    private static String settings(JsonNode result) {
+        return String.format("-f %s -wi %s -i %s -w %s -r %s",
+            result.path("forks").asText(), result.path("warmupIterations").asText(), result.path("measurementIterations").asText(),
+            result.path("warmupTime").asText().replace(" ", ""), result.path("measurementTime").asText().replace(" ", ""));
+    }
+
+    private static double allocation(JsonNode result) {
+        JsonNode norm = result.path("secondaryMetrics").path("gc.alloc.rate.norm");
+        if (norm.isMissingNode()) norm = result.path("secondaryMetrics").path("·gc.alloc.rate.norm"); // JMH before 1.36
+        return norm.isMissingNode() ? -1 : norm.path("score").asDouble();
+    }
+}
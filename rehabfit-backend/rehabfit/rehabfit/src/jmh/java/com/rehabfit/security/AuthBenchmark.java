@@ -0,0 +1,56 @@
+package com.rehabfit.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request token verification, with and without the verified-token cache, and the BCrypt
+ * check {@code AuthService.login} pays once per login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthBenchmark {
+
+    private JWTUtil cachedJwt;
+    private JWTUtil uncachedJwt;
+    private String cachedToken;
+    private String uncachedToken;
+
+    // Same strength as the encoder in SecurityConfig
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private String passwordHash;
+
+    @Setup
+    public void setUp() {
+        cachedJwt = new JWTUtil(10_000);
+        cachedToken = cachedJwt.generateToken("alex@example.com", 42L);
+        uncachedJwt = new JWTUtil(0);
+        uncachedToken = uncachedJwt.generateToken("alex@example.com", 42L);
+        passwordHash = passwordEncoder.encode("correct horse battery staple");
+    }
+
+    @Benchmark
+    public AuthPrincipal jwtParseCached() {
+        return cachedJwt.parse(cachedToken);
+    }
+
+    @Benchmark
+    public AuthPrincipal jwtParseUncached() {
+        return uncachedJwt.parse(uncachedToken);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean bcryptMatches() {
+        return passwordEncoder.matches("correct horse battery staple", passwordHash);
+    }
+}
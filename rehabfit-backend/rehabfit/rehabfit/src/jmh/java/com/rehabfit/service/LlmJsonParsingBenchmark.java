@@ -0,0 +1,41 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a dashboard-sized LLM reply into a map. {@code mapperPerCall} is how the services
+ * used to do it; {@code sharedMapper} is what they do now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LlmJsonParsingBenchmark {
+
+    private static final String REPLY = "{ \"estimatedRecovery\": \"6 weeks\", "
+        + "\"dietPlan\": [\"Eat 1.6 g protein per kg body weight\", \"Stay hydrated\", \"Add oily fish twice a week\"], "
+        + "\"llmSummary\": [\"Mobility improved from 3 to 6 over the last month. Keep stretching!\", "
+        + "\"Pain is trending down; keep icing after sessions.\", \"Strength is flat, add resisted knee extensions.\"], "
+        + "\"videos\": [{\"title\": \"ACL rehab week 10 exercises\"}, {\"title\": \"knee mobility stretches\"}, "
+        + "{\"title\": \"quad strengthening no equipment\"}] }";
+
+    private final ObjectMapper shared = new ObjectMapper();
+
+    @Benchmark
+    public Map<?, ?> mapperPerCall() throws Exception {
+        return new ObjectMapper().readValue(REPLY, Map.class);
+    }
+
+    @Benchmark
+    public Map<?, ?> sharedMapper() throws Exception {
+        return shared.readValue(REPLY, Map.class);
+    }
+}
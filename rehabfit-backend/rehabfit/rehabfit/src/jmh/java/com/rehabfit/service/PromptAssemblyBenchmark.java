@@ -0,0 +1,77 @@
+package com.rehabfit.service;
+
+import com.rehabfit.dto.UserProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt building on the chat, RAG and dashboard paths, with a profile, a 30-entry progress
+ * window and five retrieved context chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptAssemblyBenchmark {
+
+    private UserProfile user;
+    private List<Map<String, Object>> progressData;
+    private ProgressRollupService.Totals totals;
+    private List<String> contextChunks;
+    private String vectorContext;
+
+    @Setup
+    public void setUp() {
+        user = new UserProfile(42L, LocalDateTime.of(2025, 1, 6, 9, 30), "Alex Morgan", "alex@example.com",
+            "ACL", "Return to running", 34, 72.5, 178.0, "moderate",
+            "Partial ACL tear in the left knee, post-surgery week 10", LocalDate.of(2024, 11, 2),
+            Set.of("resistance band", "foam roller"));
+
+        progressData = new ArrayList<>();
+        LocalDate day = LocalDate.of(2025, 3, 1);
+        for (int i = 0; i < 30; i++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("date", day.plusDays(i).toString());
+            entry.put("painLevel", 7 - i / 6);
+            entry.put("mobility", 3 + i / 5);
+            entry.put("strength", 4 + i / 7);
+            progressData.add(entry);
+        }
+        totals = new ProgressRollupService.Totals(180, 5.2, 5.9, 6.1, LocalDate.of(2024, 11, 1), LocalDate.of(2025, 3, 1));
+
+        contextChunks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            contextChunks.add("Progress on 2025-03-0" + (i + 1) + ": Pain 5, Mobility 6, Strength 6. "
+                + "Suggested: continue quad sets and heel slides, add mini squats to 45 degrees.");
+        }
+        vectorContext = String.join("\n", contextChunks);
+    }
+
+    @Benchmark
+    public String ragPrompt() {
+        return RagService.ragProfileContext(user) + String.join("\n", contextChunks);
+    }
+
+    @Benchmark
+    public String chatPrompt() {
+        return RagService.chatProfileContext(user) + String.join("\n", contextChunks);
+    }
+
+    @Benchmark
+    public String dashboardPrompt() {
+        return RagService.dashboardPrompt(user, RagService.progressSummary(totals, progressData), vectorContext);
+    }
+}
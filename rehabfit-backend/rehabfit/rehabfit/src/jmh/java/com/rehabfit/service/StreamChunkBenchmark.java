@@ -0,0 +1,61 @@
+package com.rehabfit.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-token work while streaming a 200-token chat answer. {@code regexPerChunk} is the spacing
+ * check the streaming loop used to run on every chunk; {@code coalescer} is the lookup table
+ * in {@link TokenCoalescer} plus its frame batching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreamChunkBenchmark {
+
+    private static final String[] WORDS = {"Keep", "your", "knee", "straight", ",", "then", "slowly", "lift",
+        "the", "leg", "about", "30", "cm", ".", "**Hold**", "for", "5", "seconds", "!", "\n- Repeat"};
+
+    private String[] tokens;
+
+    @Setup
+    public void setUp() {
+        tokens = new String[200];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = WORDS[i % WORDS.length];
+        }
+    }
+
+    @Benchmark
+    public void regexPerChunk(Blackhole blackhole) {
+        StringBuilder answer = new StringBuilder();
+        for (String content : tokens) {
+            if (!content.matches("^[\\s.,!?;:\\-*#`\\[\\]()_~\\n].*")) {
+                content = " " + content;
+            }
+            answer.append(content);
+            blackhole.consume(content);
+        }
+        blackhole.consume(answer.length());
+    }
+
+    @Benchmark
+    public int coalescer(Blackhole blackhole) throws Exception {
+        // The timer never fires within one run; only the cost of arming it is measured
+        TokenCoalescer coalescer = new TokenCoalescer(blackhole::consume, (task, delayMs) -> CompletableFuture.completedFuture(null), 50, 64);
+        for (String token : tokens) {
+            coalescer.append(token);
+        }
+        coalescer.finish();
+        return coalescer.summary().frames();
+    }
+}
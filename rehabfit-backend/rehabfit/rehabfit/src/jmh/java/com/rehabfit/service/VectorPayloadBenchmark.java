@@ -0,0 +1,80 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pinecone request and response handling for a 384-dimension embedding. {@code boxedQueryBody}
+ * reproduces the old {@code List<Double>} to {@code List<Float>} conversion before the body was
+ * serialized; {@code queryBody} sends the primitive vector as the store does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VectorPayloadBenchmark {
+
+    private static final int DIMENSIONS = 384;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private float[] vector;
+    private List<Double> boxedVector;
+    private Map<?, ?> queryResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(7);
+        vector = new float[DIMENSIONS];
+        boxedVector = new ArrayList<>(DIMENSIONS);
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+            boxedVector.add((double) vector[i]);
+        }
+
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            matches.add(Map.of("id", "progress-" + i, "score", 0.9 - i * 0.05,
+                "metadata", Map.of("userId", "42", "type", "progress", "text", "Pain 5, Mobility 6, Strength 6")));
+        }
+        queryResponse = mapper.readValue(mapper.writeValueAsBytes(Map.of("matches", matches)), Map.class);
+    }
+
+    @Benchmark
+    public byte[] boxedQueryBody() throws Exception {
+        List<Float> floats = new ArrayList<>();
+        for (Double d : boxedVector) {
+            floats.add(d.floatValue());
+        }
+        Map<String, Object> filter = new HashMap<>();
+        filter.put("userId", "42");
+        Map<String, Object> body = new HashMap<>();
+        body.put("vector", floats);
+        body.put("topK", 5);
+        body.put("includeMetadata", true);
+        body.put("filter", filter);
+        return mapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public byte[] queryBody() throws Exception {
+        return mapper.writeValueAsBytes(PineconeVectorStore.queryBody("42", vector, 5, null));
+    }
+
+    @Benchmark
+    public List<VectorStore.VectorMatch> parseMatches() {
+        return PineconeVectorStore.parseMatches(queryResponse);
+    }
+}
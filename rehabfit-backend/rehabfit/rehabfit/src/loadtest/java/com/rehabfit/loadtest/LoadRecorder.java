@@ -0,0 +1,81 @@
+package com.rehabfit.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects every request's outcome per endpoint and turns them into latency percentiles,
+ * throughput and error rates. Latencies are kept raw (a run is at most a few hundred thousand
+ * requests), so percentiles are exact.
+ */
+final class LoadRecorder {
+
+    private final Map<String, EndpointLog> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * @param status HTTP status, or 0 when the request failed without one
+     * @param firstByteNanos time to the first body bytes, or -1 when not measured
+     */
+    void record(String endpoint, int status, boolean failed, long latencyNanos, long firstByteNanos) {
+        endpoints.computeIfAbsent(endpoint, e -> new EndpointLog()).add(status, failed, latencyNanos, firstByteNanos);
+    }
+
+    List<EndpointSummary> summarize(double elapsedSeconds) {
+        List<EndpointSummary> summaries = new ArrayList<>();
+        new TreeMap<>(endpoints).forEach((name, log) -> summaries.add(log.summarize(name, elapsedSeconds)));
+        return summaries;
+    }
+
+    private static final class EndpointLog {
+        private long[] latencies = new long[1024];
+        private long[] firstBytes = new long[1024];
+        private int count;
+        private int firstByteCount;
+        private long errors;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+
+        synchronized void add(int status, boolean failed, long latencyNanos, long firstByteNanos) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latencyNanos;
+            if (firstByteNanos >= 0) {
+                if (firstByteCount == firstBytes.length) firstBytes = Arrays.copyOf(firstBytes, firstByteCount * 2);
+                firstBytes[firstByteCount++] = firstByteNanos;
+            }
+            if (failed) errors++;
+            statuses.merge(status, 1L, Long::sum);
+        }
+
+        synchronized EndpointSummary summarize(String name, double elapsedSeconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            long[] sortedFirstBytes = Arrays.copyOf(firstBytes, firstByteCount);
+            Arrays.sort(sortedFirstBytes);
+            return new EndpointSummary(name, count, errors, count == 0 ? 0 : (double) errors / count,
+                count / elapsedSeconds,
+                millis(percentile(sorted, 50)), millis(percentile(sorted, 90)), millis(percentile(sorted, 95)),
+                millis(percentile(sorted, 99)), millis(count == 0 ? 0 : sorted[count - 1]),
+                firstByteCount == 0 ? null : millis(percentile(sortedFirstBytes, 50)),
+                firstByteCount == 0 ? null : millis(percentile(sortedFirstBytes, 99)),
+                new TreeMap<>(statuses));
+        }
+
+        // Nearest-rank percentile
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(p / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    record EndpointSummary(String endpoint, long requests, long errors, double errorRate, double throughputPerSecond,
+                           double p50Ms, double p90Ms, double p95Ms, double p99Ms, double maxMs,
+                           Double firstByteP50Ms, Double firstByteP99Ms, Map<Integer, Long> statuses) {}
+}
@@ -0,0 +1,366 @@
+package com.rehabfit.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rehabfit.loadtest.UpstreamStubs.Stub;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boots the whole app on H2 against {@link UpstreamStubs} and drives mixed traffic from a pool
+ * of virtual users, each logged in as its own account. After a warm-up, every request is
+ * recorded; the run ends with per-endpoint latency percentiles, throughput and error rates on
+ * stdout and in {@code target/loadtest-report.json}. The app's own Prometheus scrape, with the
+ * per-stage {@code rag.stage} timers, is saved next to it in {@code target/loadtest-metrics.txt}.
+ *
+ * <p>Settings (system properties): {@code loadtest.users}, {@code loadtest.duration-seconds},
+ * {@code loadtest.warmup-seconds}, {@code loadtest.think-ms}, {@code loadtest.mix} (weights, e.g.
+ * {@code chat=30,stream=25,dashboard=25,progress=12,login=5,google=3}), {@code loadtest.max-error-rate},
+ * and {@code stub.<embedding|openai|pinecone|youtube|google>} in {@link StubBehavior} syntax.
+ */
+@ActiveProfiles("loadtest")
+@AutoConfigureObservability(tracing = false)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class RagLoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+
+    private static final String[] QUESTIONS = {
+        "What exercises can I do for my knee today?",
+        "Is it normal that my knee is stiff in the morning?",
+        "How often should I stretch?",
+        "Can I start running again?",
+        "What should I eat to recover faster?",
+        "How do I reduce swelling after exercise?",
+        "Which exercises strengthen my quads without equipment?",
+        "How long until I can play football again?",
+        "Should I use ice or heat?",
+        "My pain went up after yesterday's session, what should I change?"
+    };
+
+    private static final Map<Stub, StubBehavior> DEFAULT_BEHAVIORS = new EnumMap<>(Map.of(
+        Stub.EMBEDDING, new StubBehavior(15, 60, 0, 0, 0),
+        Stub.OPENAI, new StubBehavior(400, 2000, 0, 40, 80),
+        Stub.PINECONE, new StubBehavior(20, 120, 0, 0, 0),
+        Stub.YOUTUBE, new StubBehavior(80, 400, 0, 0, 0),
+        Stub.GOOGLE, new StubBehavior(60, 300, 0, 0, 0)));
+
+    private static UpstreamStubs stubs;
+
+    @LocalServerPort
+    private int port;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) throws IOException {
+        Map<Stub, StubBehavior> behaviors = new EnumMap<>(Stub.class);
+        for (Stub stub : Stub.values()) {
+            behaviors.put(stub, StubBehavior.parse(System.getProperty("stub." + stub.name().toLowerCase()), DEFAULT_BEHAVIORS.get(stub)));
+        }
+        stubs = new UpstreamStubs(behaviors);
+        stubs.properties().forEach((key, value) -> registry.add(key, () -> value));
+    }
+
+    @AfterAll
+    static void stopStubs() {
+        if (stubs != null) stubs.close();
+    }
+
+    @Test
+    void mixedTraffic() throws Exception {
+        int users = Integer.getInteger("loadtest.users", 20);
+        int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+        int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+        long thinkMs = Long.getLong("loadtest.think-ms", 200);
+        double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+        Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix", "chat=30,stream=25,dashboard=25,progress=12,login=5,google=3"));
+
+        List<VirtualUser> virtualUsers = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            virtualUsers.add(register(i));
+        }
+
+        run(virtualUsers, mix, thinkMs, warmupSeconds, new LoadRecorder());
+        LoadRecorder recorder = new LoadRecorder();
+        long started = System.nanoTime();
+        run(virtualUsers, mix, thinkMs, durationSeconds, recorder);
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        List<LoadRecorder.EndpointSummary> summaries = recorder.summarize(elapsed);
+        report(summaries, users, elapsed, mix);
+        saveServerMetrics();
+
+        long requests = summaries.stream().mapToLong(LoadRecorder.EndpointSummary::requests).sum();
+        long errors = summaries.stream().mapToLong(LoadRecorder.EndpointSummary::errors).sum();
+        assertTrue(requests > 0, "No requests completed");
+        assertTrue((double) errors / requests <= maxErrorRate,
+            String.format("Error rate %.2f%% above the allowed %.2f%%", 100.0 * errors / requests, maxErrorRate * 100));
+    }
+
+    // Closed loop: every virtual user issues one request at a time, with a random think time in between
+    private void run(List<VirtualUser> virtualUsers, Map<String, Integer> mix, long thinkMs, int seconds, LoadRecorder recorder)
+            throws InterruptedException {
+        if (seconds <= 0) return;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        ExecutorService pool = Executors.newFixedThreadPool(virtualUsers.size());
+        List<Future<?>> running = new ArrayList<>();
+        for (VirtualUser user : virtualUsers) {
+            running.add(pool.submit(() -> {
+                while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                    execute(user, pick(mix, totalWeight), recorder);
+                    if (thinkMs > 0) {
+                        try {
+                            Thread.sleep(ThreadLocalRandom.current().nextLong(thinkMs * 2 + 1));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }));
+        }
+        pool.shutdown();
+        if (!pool.awaitTermination(seconds + 120L, TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+        running.forEach(f -> f.cancel(true));
+    }
+
+    private void execute(VirtualUser user, String operation, LoadRecorder recorder) {
+        long started = System.nanoTime();
+        try {
+            switch (operation) {
+                case "chat" -> {
+                    HttpResponse<String> response = send(post("/api/rag/chat", user, Map.of("question", question())));
+                    recordPlain(recorder, "POST /api/rag/chat", response, started);
+                }
+                case "stream" -> stream(user, recorder, started);
+                case "dashboard" -> {
+                    HttpRequest.Builder request = authorized("/api/rag/dashboard", user).GET();
+                    if (user.dashboardEtag != null) request.header("If-None-Match", user.dashboardEtag);
+                    HttpResponse<String> response = send(request.build());
+                    response.headers().firstValue("ETag").ifPresent(etag -> user.dashboardEtag = etag);
+                    recordPlain(recorder, "GET /api/rag/dashboard", response, started);
+                }
+                case "progress" -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    HttpResponse<String> response = send(post("/api/progress", user, Map.of(
+                        "date", LocalDate.now().minusDays(random.nextInt(60)).toString(),
+                        "painLevel", random.nextInt(11), "mobility", random.nextInt(11), "strength", random.nextInt(11))));
+                    recordPlain(recorder, "POST /api/progress", response, started);
+                }
+                case "login" -> {
+                    HttpResponse<String> response = send(json("/auth/login", Map.of("email", user.email, "password", PASSWORD)).build());
+                    recordPlain(recorder, "POST /auth/login", response, started);
+                }
+                case "google" -> {
+                    HttpResponse<String> response = send(json("/auth/google",
+                        Map.of("token", "stub-" + user.email, "email", user.email, "name", user.email)).build());
+                    recordPlain(recorder, "POST /auth/google", response, started);
+                }
+                default -> throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+        } catch (Exception e) {
+            recorder.record(endpointName(operation), 0, true, System.nanoTime() - started, -1);
+        }
+    }
+
+    // A stream only counts as successful if it ends with the done event; the first message frame is its time to first token
+    private void stream(VirtualUser user, LoadRecorder recorder, long started) throws IOException, InterruptedException {
+        HttpRequest request = post("/api/rag/chat/stream", user, Map.of("question", question()));
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long firstToken = -1;
+        boolean done = false;
+        boolean error = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("event:message") && firstToken < 0) firstToken = System.nanoTime() - started;
+                if (line.startsWith("event:done")) done = true;
+                if (line.startsWith("event:error")) error = true;
+            }
+        }
+        boolean failed = response.statusCode() != 200 || error || !done;
+        recorder.record("POST /api/rag/chat/stream", response.statusCode(), failed, System.nanoTime() - started, firstToken);
+    }
+
+    private void recordPlain(LoadRecorder recorder, String endpoint, HttpResponse<String> response, long started) {
+        int status = response.statusCode();
+        boolean failed = !(status >= 200 && status < 300) && status != 304;
+        recorder.record(endpoint, status, failed, System.nanoTime() - started, -1);
+    }
+
+    private VirtualUser register(int index) throws Exception {
+        String email = "load-user-" + index + "-" + System.nanoTime() + "@example.com";
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("email", email);
+        user.put("password", PASSWORD);
+        user.put("name", "Load User " + index);
+        user.put("injuryType", index % 2 == 0 ? "ACL" : "ankle sprain");
+        user.put("fitnessGoal", index % 3 == 0 ? "Return to running" : "Walk without pain");
+        HttpResponse<String> response = send(json("/auth/register", user).build());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Registration failed with " + response.statusCode() + ": " + response.body());
+        }
+        VirtualUser virtualUser = new VirtualUser(email, mapper.readTree(response.body()).path("token").asText());
+        // A few weeks of history so dashboards and prompts have something to summarize
+        for (int day = 0; day < 14; day++) {
+            send(post("/api/progress", virtualUser, Map.of("date", LocalDate.now().minusDays(day).toString(),
+                "painLevel", 6 - day / 3, "mobility", 4 + day / 4, "strength", 5)));
+        }
+        return virtualUser;
+    }
+
+    private void report(List<LoadRecorder.EndpointSummary> summaries, int users, double elapsed, Map<String, Integer> mix)
+            throws IOException {
+        StringBuilder table = new StringBuilder(String.format("%n%-28s %8s %7s %8s %9s %9s %9s %9s %9s %10s%n",
+            "endpoint", "requests", "err%", "req/s", "p50 ms", "p90 ms", "p95 ms", "p99 ms", "max ms", "ttft p50"));
+        for (LoadRecorder.EndpointSummary s : summaries) {
+            table.append(String.format("%-28s %8d %6.2f%% %8.1f %9.1f %9.1f %9.1f %9.1f %9.1f %10s%n",
+                s.endpoint(), s.requests(), s.errorRate() * 100, s.throughputPerSecond(),
+                s.p50Ms(), s.p90Ms(), s.p95Ms(), s.p99Ms(), s.maxMs(),
+                s.firstByteP50Ms() == null ? "-" : String.format("%.1f", s.firstByteP50Ms())));
+        }
+        table.append(String.format("%n%d virtual users for %.0f s%n", users, elapsed));
+        Map<String, Object> upstreams = new LinkedHashMap<>();
+        for (Stub stub : Stub.values()) {
+            table.append(String.format("  %-10s %7d calls, %5d failed  (%s)%n", stub.name().toLowerCase(),
+                stubs.calls(stub), stubs.failures(stub), stubs.behavior(stub)));
+            upstreams.put(stub.name().toLowerCase(), Map.of("behavior", stubs.behavior(stub),
+                "calls", stubs.calls(stub), "failures", stubs.failures(stub)));
+        }
+        System.out.println(table);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", users);
+        report.put("elapsedSeconds", elapsed);
+        report.put("mix", mix);
+        report.put("endpoints", summaries);
+        report.put("upstreams", upstreams);
+        File file = new File(System.getProperty("loadtest.report", "target/loadtest-report.json"));
+        file.getParentFile().mkdirs();
+        mapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+    }
+
+    private void saveServerMetrics() throws IOException, InterruptedException {
+        HttpResponse<String> scrape = send(HttpRequest.newBuilder(
+            URI.create("http://localhost:" + managementPort + "/actuator/prometheus")).GET().build());
+        assertTrue(scrape.statusCode() == 200, "Prometheus scrape returned " + scrape.statusCode());
+        File file = new File(System.getProperty("loadtest.metrics", "target/loadtest-metrics.txt"));
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), scrape.body());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest post(String path, VirtualUser user, Map<String, Object> body) throws IOException {
+        return authorized(path, user)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+            .build();
+    }
+
+    private HttpRequest.Builder json(String path, Map<String, Object> body) throws IOException {
+        return HttpRequest.newBuilder(uri(path))
+            .timeout(Duration.ofSeconds(60))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)));
+    }
+
+    private HttpRequest.Builder authorized(String path, VirtualUser user) {
+        return HttpRequest.newBuilder(uri(path))
+            .timeout(Duration.ofSeconds(60))
+            .header("Authorization", "Bearer " + user.token);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static String question() {
+        return QUESTIONS[ThreadLocalRandom.current().nextInt(QUESTIONS.length)];
+    }
+
+    private static String pick(Map<String, Integer> mix, int totalWeight) {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) return entry.getKey();
+        }
+        throw new IllegalStateException("Empty traffic mix");
+    }
+
+    private static String endpointName(String operation) {
+        return switch (operation) {
+            case "chat" -> "POST /api/rag/chat";
+            case "stream" -> "POST /api/rag/chat/stream";
+            case "dashboard" -> "GET /api/rag/dashboard";
+            case "progress" -> "POST /api/progress";
+            case "login" -> "POST /auth/login";
+            case "google" -> "POST /auth/google";
+            default -> operation;
+        };
+    }
+
+    private static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            String[] kv = pair.split("=", 2);
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight > 0) mix.put(kv[0].trim(), weight);
+        }
+        if (mix.isEmpty()) throw new IllegalArgumentException("loadtest.mix has no positive weights");
+        return mix;
+    }
+
+    private static final class VirtualUser {
+        final String email;
+        final String token;
+        volatile String dashboardEtag;
+
+        VirtualUser(String email, String token) {
+            this.email = email;
+            this.token = token;
+        }
+    }
+}
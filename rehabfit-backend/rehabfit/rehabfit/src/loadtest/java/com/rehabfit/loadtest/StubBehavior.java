@@ -0,0 +1,64 @@
+package com.rehabfit.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How one stand-in upstream behaves: log-normally distributed latency given by its median and
+ * 99th percentile, a failure rate, and for streamed completions the token rate and answer length.
+ * Parsed from specs like {@code median-ms=40,p99-ms=400,error-rate=0.01,tokens-per-second=40}.
+ */
+record StubBehavior(double medianMs, double p99Ms, double errorRate, double tokensPerSecond, int answerTokens) {
+
+    // z-score of the 99th percentile of a standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    StubBehavior {
+        if (medianMs < 0 || p99Ms < 0) throw new IllegalArgumentException("Latencies must not be negative");
+        if (errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("error-rate must be between 0 and 1");
+    }
+
+    /** Parses a spec; keys it leaves out keep their values from {@code defaults}. */
+    static StubBehavior parse(String spec, StubBehavior defaults) {
+        if (spec == null || spec.isBlank()) return defaults;
+        double median = defaults.medianMs();
+        double p99 = defaults.p99Ms();
+        double errors = defaults.errorRate();
+        double tokensPerSecond = defaults.tokensPerSecond();
+        int answerTokens = defaults.answerTokens();
+        for (String pair : spec.split(",")) {
+            String[] kv = pair.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Expected key=value in '" + spec + "'");
+            String value = kv[1].trim();
+            switch (kv[0].trim()) {
+                case "median-ms" -> median = Double.parseDouble(value);
+                case "p99-ms" -> p99 = Double.parseDouble(value);
+                case "error-rate" -> errors = Double.parseDouble(value);
+                case "tokens-per-second" -> tokensPerSecond = Double.parseDouble(value);
+                case "answer-tokens" -> answerTokens = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown stub setting '" + kv[0] + "'");
+            }
+        }
+        return new StubBehavior(median, Math.max(median, p99), errors, tokensPerSecond, answerTokens);
+    }
+
+    long sampleLatencyMs() {
+        if (medianMs == 0) return 0;
+        if (p99Ms <= medianMs) return Math.round(medianMs);
+        double sigma = Math.log(p99Ms / medianMs) / Z_99;
+        return Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    boolean shouldFail() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    long tokenIntervalMs() {
+        return tokensPerSecond <= 0 ? 0 : Math.round(1000 / tokensPerSecond);
+    }
+
+    @Override
+    public String toString() {
+        String latency = String.format("median %.0f ms, p99 %.0f ms, errors %.1f%%", medianMs, p99Ms, errorRate * 100);
+        return tokensPerSecond > 0 ? latency + String.format(", %d tokens at %.0f/s", answerTokens, tokensPerSecond) : latency;
+    }
+}
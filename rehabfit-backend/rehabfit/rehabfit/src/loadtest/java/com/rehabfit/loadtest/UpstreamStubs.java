@@ -0,0 +1,281 @@
+package com.rehabfit.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-ins for every upstream the app calls, on one JDK HTTP server: the embedding
+ * service, OpenAI chat completions (plain and streamed), Pinecone, YouTube search and Google's
+ * tokeninfo. Each answers with the shapes the app parses, after a latency drawn from its
+ * {@link StubBehavior}, and fails with a 503 at the configured rate.
+ */
+final class UpstreamStubs implements AutoCloseable {
+
+    enum Stub { EMBEDDING, OPENAI, PINECONE, YOUTUBE, GOOGLE }
+
+    private static final int DIMENSIONS = 384;
+
+    private static final String DASHBOARD_JSON = "{ \"estimatedRecovery\": \"4 weeks\", "
+        + "\"dietPlan\": [\"Eat more protein\", \"Stay hydrated\"], "
+        + "\"llmSummary\": [\"Mobility is improving. Keep stretching!\", \"Ice after sessions to keep pain down.\"], "
+        + "\"videos\": [{\"title\": \"knee mobility stretches\"}, {\"title\": \"quad strengthening\"}] }";
+
+    private static final String[] WORDS = {"Start", "with", "gentle", "range", "of", "motion", "work,", "then",
+        "add", "**light**", "resistance.", "Keep", "pain", "below", "4/10", "and", "rest", "between", "sets."};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<Stub, StubBehavior> behaviors;
+    private final Map<Stub, AtomicLong> calls = new ConcurrentHashMap<>();
+    private final Map<Stub, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    UpstreamStubs(Map<Stub, StubBehavior> behaviors) throws IOException {
+        this.behaviors = Map.copyOf(behaviors);
+        for (Stub stub : Stub.values()) {
+            calls.put(stub, new AtomicLong());
+            failures.put(stub, new AtomicLong());
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        // Streamed completions hold their thread while they trickle tokens out
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "upstream-stub");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/embedding/", handler(Stub.EMBEDDING, this::embed));
+        server.createContext("/v1/chat/completions", handler(Stub.OPENAI, this::chatCompletion));
+        server.createContext("/pinecone/", handler(Stub.PINECONE, this::pinecone));
+        server.createContext("/youtube/", handler(Stub.YOUTUBE, this::youtubeSearch));
+        server.createContext("/google/", handler(Stub.GOOGLE, this::tokenInfo));
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Spring properties that point the app at these stubs. */
+    Map<String, String> properties() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("embedding.service.url", baseUrl() + "/embedding");
+        properties.put("llm.openai.base-url", baseUrl() + "/");
+        properties.put("pinecone.base-url", baseUrl() + "/pinecone");
+        properties.put("youtube.api.base-url", baseUrl() + "/youtube");
+        properties.put("google.oauth.tokeninfo-url", baseUrl() + "/google/tokeninfo");
+        return properties;
+    }
+
+    StubBehavior behavior(Stub stub) {
+        return behaviors.get(stub);
+    }
+
+    long calls(Stub stub) {
+        return calls.get(stub).get();
+    }
+
+    long failures(Stub stub) {
+        return failures.get(stub).get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Route {
+        void handle(HttpExchange exchange, StubBehavior behavior) throws IOException, InterruptedException;
+    }
+
+    private HttpHandler handler(Stub stub, Route route) {
+        return exchange -> {
+            try (exchange) {
+                calls.get(stub).incrementAndGet();
+                StubBehavior behavior = behaviors.get(stub);
+                Thread.sleep(behavior.sampleLatencyMs());
+                if (behavior.shouldFail()) {
+                    failures.get(stub).incrementAndGet();
+                    exchange.getRequestBody().readAllBytes();
+                    sendJson(exchange, 503, Map.of("error", Map.of("message", "stub failure", "code", 503)));
+                    return;
+                }
+                route.handle(exchange, behavior);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    // POST /embed {"text"} and /embed/batch {"texts"}; vectors depend only on the text, so caches behave as in production
+    private void embed(HttpExchange exchange, StubBehavior behavior) throws IOException {
+        JsonNode body = mapper.readTree(exchange.getRequestBody());
+        if (exchange.getRequestURI().getPath().endsWith("/batch")) {
+            List<float[]> embeddings = new ArrayList<>();
+            for (JsonNode text : body.path("texts")) {
+                embeddings.add(vectorFor(text.asText()));
+            }
+            sendJson(exchange, 200, Map.of("embeddings", embeddings));
+        } else {
+            sendJson(exchange, 200, Map.of("embedding", vectorFor(body.path("text").asText())));
+        }
+    }
+
+    private void chatCompletion(HttpExchange exchange, StubBehavior behavior) throws IOException, InterruptedException {
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        JsonNode messages = request.path("messages");
+        String prompt = messages.isEmpty() ? "" : messages.get(messages.size() - 1).path("content").asText();
+        String model = request.path("model").asText("gpt-3.5-turbo");
+
+        if (request.path("stream").asBoolean(false)) {
+            streamCompletion(exchange, behavior, model);
+            return;
+        }
+        // The dashboard and RAG paths both expect JSON back; RAG falls back to plain text otherwise
+        String content = prompt.contains("estimatedRecovery")
+            ? DASHBOARD_JSON
+            : mapper.writeValueAsString(Map.of("answer", answer(behavior.answerTokens()),
+                "videos", List.of(Map.of("title", "knee rehab exercises"))));
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("message", Map.of("role", "assistant", "content", content));
+        choice.put("finish_reason", "stop");
+        int completionTokens = Math.max(1, content.length() / 4);
+        int promptTokens = Math.max(1, prompt.length() / 4);
+        sendJson(exchange, 200, Map.of(
+            "id", "chatcmpl-stub", "object", "chat.completion", "created", System.currentTimeMillis() / 1000, "model", model,
+            "choices", List.of(choice),
+            "usage", Map.of("prompt_tokens", promptTokens, "completion_tokens", completionTokens,
+                "total_tokens", promptTokens + completionTokens)));
+    }
+
+    // Server-sent events, one chunk per token at the configured rate, then [DONE]
+    private void streamCompletion(HttpExchange exchange, StubBehavior behavior, String model) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        long interval = behavior.tokenIntervalMs();
+        for (int i = 0; i < behavior.answerTokens(); i++) {
+            String token = (i == 0 ? "" : " ") + WORDS[i % WORDS.length];
+            Map<String, Object> choice = new LinkedHashMap<>();
+            choice.put("index", 0);
+            choice.put("delta", Map.of("content", token));
+            choice.put("finish_reason", null);
+            Map<String, Object> chunk = Map.of("id", "chatcmpl-stub", "object", "chat.completion.chunk",
+                "created", System.currentTimeMillis() / 1000, "model", model, "choices", List.of(choice));
+            out.write(("data: " + mapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            if (interval > 0) Thread.sleep(interval);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // /query returns topK synthetic matches; upserts and deletes are acknowledged and dropped
+    private void pinecone(HttpExchange exchange, StubBehavior behavior) throws IOException {
+        JsonNode body = mapper.readTree(exchange.getRequestBody());
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/query")) {
+            int topK = body.path("topK").asInt(5);
+            String userId = body.path("filter").path("userId").asText();
+            List<Map<String, Object>> matches = new ArrayList<>();
+            for (int i = 0; i < topK; i++) {
+                matches.add(Map.of("id", "progress-" + userId + "-" + i, "score", 0.92 - i * 0.03,
+                    "metadata", Map.of("userId", userId, "type", "progress",
+                        "text", "Progress on day " + (i + 1) + ": Pain 4, Mobility 6, Strength 5")));
+            }
+            sendJson(exchange, 200, Map.of("matches", matches, "namespace", ""));
+        } else if (path.endsWith("/vectors/upsert")) {
+            sendJson(exchange, 200, Map.of("upsertedCount", body.path("vectors").size()));
+        } else {
+            sendJson(exchange, 200, Map.of());
+        }
+    }
+
+    private void youtubeSearch(HttpExchange exchange, StubBehavior behavior) throws IOException {
+        String query = queryParam(exchange, "q");
+        int maxResults = Integer.parseInt(queryParam(exchange, "maxResults", "3"));
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < maxResults; i++) {
+            items.add(Map.of("id", Map.of("kind", "youtube#video", "videoId", "stub" + Math.abs((query + i).hashCode())),
+                "snippet", Map.of("title", query + " #" + (i + 1))));
+        }
+        sendJson(exchange, 200, Map.of("items", items));
+    }
+
+    // Access tokens of the form "stub-<email>" belong to that email; anything else is rejected like an expired token
+    private void tokenInfo(HttpExchange exchange, StubBehavior behavior) throws IOException {
+        String token = queryParam(exchange, "access_token");
+        if (token == null || !token.startsWith("stub-")) {
+            sendJson(exchange, 400, Map.of("error", "invalid_token"));
+            return;
+        }
+        sendJson(exchange, 200, Map.of("email", token.substring(5), "email_verified", "true", "expires_in", "3599"));
+    }
+
+    private static float[] vectorFor(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static String answer(int tokens) {
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            if (i > 0) answer.append(' ');
+            answer.append(WORDS[i % WORDS.length]);
+        }
+        return answer.toString();
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        return queryParam(exchange, name, null);
+    }
+
+    private static String queryParam(HttpExchange exchange, String name, String fallback) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return fallback;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return fallback;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
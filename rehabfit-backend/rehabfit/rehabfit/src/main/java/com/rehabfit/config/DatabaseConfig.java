@@ -19,14 +19,32 @@ public class DatabaseConfig {
     @Value("${DB_PASSWORD:#{null}}")
     private String dbPassword;
 
+    // A ready-made JDBC URL (JDBC_DATABASE_URL, or any other database such as the load test's H2)
+    @Value("${spring.datasource.url:}")
+    private String jdbcUrl;
+
+    @Value("${spring.datasource.username:}")
+    private String jdbcUsername;
+
+    @Value("${spring.datasource.password:}")
+    private String jdbcPassword;
+
     @Bean
     @Primary
     public DataSource dataSource() {
+        if (jdbcUrl != null && jdbcUrl.startsWith("jdbc:")) {
+            return DataSourceBuilder.create()
+                    .url(jdbcUrl)
+                    .username(jdbcUsername)
+                    .password(jdbcPassword)
+                    .build();
+        }
+
         if (databaseUrl != null && databaseUrl.startsWith("postgres://")) {
             // Convert postgres:// URL to jdbc:postgresql://
-            String jdbcUrl = databaseUrl.replace("postgres://", "jdbc:postgresql://");
+            String convertedUrl = databaseUrl.replace("postgres://", "jdbc:postgresql://");
             return DataSourceBuilder.create()
-                    .url(jdbcUrl)
+                    .url(convertedUrl)
                     .username(dbUsername)
                     .password(dbPassword)
                     .build();
@@ -39,4 +57,4 @@ public class DatabaseConfig {
                 .password("rolano123")
                 .build();
     }
-}
\ No newline at end of file
+}
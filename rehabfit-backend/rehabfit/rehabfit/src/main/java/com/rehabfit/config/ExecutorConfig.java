@@ -0,0 +1,95 @@
+package com.rehabfit.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    // Bounded pool for the dashboard fan-out; when saturated the request thread runs the stage itself
+    @Bean(name = "dashboardExecutor")
+    public ThreadPoolTaskExecutor dashboardExecutor(
+            @Value("${dashboard.executor.core-size:8}") int coreSize,
+            @Value("${dashboard.executor.max-size:32}") int maxSize,
+            @Value("${dashboard.executor.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("dashboard-");
+        executor.setTaskDecorator(ExecutorConfig::requestScoped);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Runs SSE chat streams. Bounded with a short queue; beyond that new streams are rejected
+    // rather than piling up. On Java 21+ the workers are virtual threads, since each stream
+    // spends almost all of its time blocked on the LLM.
+    @Bean(name = "chatStreamExecutor")
+    public ThreadPoolTaskExecutor chatStreamExecutor(
+            @Value("${chat.stream.max-concurrent:64}") int maxConcurrent,
+            @Value("${chat.stream.queue-capacity:32}") int queueCapacity,
+            @Value("${chat.stream.virtual-threads:true}") boolean virtualThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaxPoolSize(maxConcurrent);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("chat-stream-");
+        executor.setTaskDecorator(ExecutorConfig::requestScoped);
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            executor.setThreadFactory(new VirtualThreadTaskExecutor("chat-stream-").getVirtualThreadFactory());
+        }
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Sends stream heartbeats, timed flushes of buffered tokens and the frames of reactive streams,
+    // so a client that is slow to read only holds up one of these threads, not the sweeper that
+    // keeps every stream's timers or an HTTP client's I/O thread. When all are busy a heartbeat or
+    // timed flush is skipped (retried on the next sweep, or sent with the next frame), and a
+    // reactive frame is written on the calling thread.
+    @Bean(name = "chatStreamWriteExecutor")
+    public ThreadPoolTaskExecutor chatStreamWriteExecutor(
+            @Value("${chat.stream.writers:8}") int writers,
+            @Value("${chat.stream.write-queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(writers);
+        executor.setMaxPoolSize(writers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("chat-stream-write-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Background maintenance jobs such as the rollup backfill. A single worker, so they queue up
+    // behind each other instead of competing for the database.
+    @Bean(name = "maintenanceExecutor")
+    public ThreadPoolTaskExecutor maintenanceExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(16);
+        executor.setThreadNamePrefix("maintenance-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Tasks keep counting towards the request that submitted them, in metrics and its timeline
+    private static Runnable requestScoped(Runnable task) {
+        return RequestTimeline.propagate(RequestEndpoint.propagate(task));
+    }
+}
@@ -0,0 +1,187 @@
+package com.rehabfit.config;
+
+import com.rehabfit.security.CurrentUserResolver;
+import com.rehabfit.security.JWTUtil;
+import com.rehabfit.service.DashboardCache;
+import com.rehabfit.service.DashboardService;
+import com.rehabfit.service.EmbeddingBatcher;
+import com.rehabfit.service.EmbeddingCache;
+import com.rehabfit.service.IndexOutboxWorker;
+import com.rehabfit.service.LlmGateway;
+import com.rehabfit.service.SemanticAnswerCache;
+import com.rehabfit.service.SseStreamRegistry;
+import com.rehabfit.service.UserProfileCache;
+import com.rehabfit.service.YouTubeGateway;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.data.DefaultRepositoryTagsProvider;
+import org.springframework.boot.actuate.metrics.data.RepositoryTagsProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener.RepositoryMethodInvocation;
+import org.springframework.web.cors.CorsConfigurationSource;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Metrics wiring: every request is tagged with its endpoint (see {@link RequestEndpoint}),
+ * Spring Data's repository timers get the same tag, and the counters the services already
+ * keep are published as meters. Everything is scraped from {@code /actuator/prometheus}.
+ * RAG and progress responses also report their own stages in a Server-Timing header.
+ */
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AsyncHandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                RequestEndpoint.set(request.getMethod() + " " + (pattern != null ? pattern : "unmapped"));
+                return true;
+            }
+
+            @Override
+            public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                RequestEndpoint.clear();
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                RequestEndpoint.clear();
+            }
+        });
+    }
+
+    // Ahead of the security filters, so token checks land in the timeline
+    @Bean
+    @ConditionalOnProperty(name = "server-timing.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<ServerTimingFilter> serverTimingFilter(
+            @Value("${server-timing.timeline.enabled:false}") boolean timelineEnabled,
+            @Qualifier("corsConfigurationSource") CorsConfigurationSource cors) {
+        FilterRegistrationBean<ServerTimingFilter> registration = new FilterRegistrationBean<>(new ServerTimingFilter(timelineEnabled, cors));
+        registration.addUrlPatterns("/api/rag/*", "/api/progress/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    // Repository invocations (spring.data.repository.invocations) tagged with the endpoint they served
+    @Bean
+    public RepositoryTagsProvider repositoryTagsProvider() {
+        DefaultRepositoryTagsProvider defaults = new DefaultRepositoryTagsProvider();
+        return invocation -> {
+            List<Tag> tags = new ArrayList<>();
+            defaults.repositoryTags(invocation).forEach(tags::add);
+            tags.add(Tag.of("endpoint", RequestEndpoint.current()));
+            return tags;
+        };
+    }
+
+    @Bean
+    public MeterBinder rehabfitMeters(UserProfileCache profileCache, SemanticAnswerCache answerCache,
+                                      DashboardCache dashboardCache, EmbeddingCache embeddingCache,
+                                      YouTubeGateway youTube, JWTUtil jwtUtil, CurrentUserResolver currentUser,
+                                      SseStreamRegistry streams, LlmGateway llmGateway, EmbeddingBatcher embeddingBatcher,
+                                      DashboardService dashboardService, IndexOutboxWorker outboxWorker) {
+        return registry -> {
+            cache(registry, "profile", profileCache, UserProfileCache::getHits, UserProfileCache::getMisses, UserProfileCache::size);
+            counter(registry, "rehabfit.cache.evictions", "profile", profileCache, UserProfileCache::getEvictions);
+            counter(registry, "rehabfit.cache.invalidations", "profile", profileCache, UserProfileCache::getInvalidations);
+            cache(registry, "answer", answerCache, SemanticAnswerCache::getHits, SemanticAnswerCache::getMisses, SemanticAnswerCache::size);
+            counter(registry, "rehabfit.cache.evictions", "answer", answerCache, SemanticAnswerCache::getEvictions);
+            FunctionCounter.builder("rehabfit.llm.tokens.saved", answerCache, SemanticAnswerCache::getSavedTokens)
+                .description("LLM tokens not spent thanks to semantic answer cache hits").register(registry);
+            cache(registry, "dashboard", dashboardCache, DashboardCache::getHits, DashboardCache::getMisses, DashboardCache::size);
+            counter(registry, "rehabfit.cache.invalidations", "dashboard", dashboardCache, DashboardCache::getInvalidations);
+            cache(registry, "embedding", embeddingCache, EmbeddingCache::getHits, EmbeddingCache::getMisses, EmbeddingCache::size);
+            counter(registry, "rehabfit.cache.evictions", "embedding", embeddingCache, EmbeddingCache::getEvictions);
+            cache(registry, "youtube", youTube, YouTubeGateway::getHits, YouTubeGateway::getMisses, YouTubeGateway::size);
+            counter(registry, "rehabfit.cache.stale_serves", "youtube", youTube, YouTubeGateway::getStaleServes);
+            counter(registry, "rehabfit.cache.collapsed", "youtube", youTube, YouTubeGateway::getCollapsed);
+            Gauge.builder("rehabfit.youtube.quota.units.today", youTube, YouTubeGateway::getQuotaUnitsSpentToday)
+                .description("YouTube API quota units used since the daily reset").register(registry);
+            FunctionCounter.builder("rehabfit.cache.hits", jwtUtil, JWTUtil::getTokenCacheHits).tag("cache", "jwt").register(registry);
+            FunctionCounter.builder("rehabfit.cache.misses", jwtUtil, JWTUtil::getTokenCacheMisses).tag("cache", "jwt").register(registry);
+            FunctionCounter.builder("rehabfit.auth.user_lookups", currentUser, CurrentUserResolver::getDatabaseLookups)
+                .description("Requests whose token had no user id and needed a lookup by email").register(registry);
+
+            Gauge.builder("rehabfit.chat.streams.active", streams, SseStreamRegistry::getActiveStreams).register(registry);
+            FunctionCounter.builder("rehabfit.chat.streams", streams, SseStreamRegistry::getStartedStreams).tag("event", "started").register(registry);
+            FunctionCounter.builder("rehabfit.chat.streams", streams, SseStreamRegistry::getRejectedStreams).tag("event", "rejected").register(registry);
+            FunctionCounter.builder("rehabfit.chat.streams", streams, SseStreamRegistry::getTimedOutStreams).tag("event", "timed_out").register(registry);
+            FunctionCounter.builder("rehabfit.chat.streams", streams, SseStreamRegistry::getClientDisconnects).tag("event", "disconnected").register(registry);
+            FunctionCounter.builder("rehabfit.chat.frames", streams, SseStreamRegistry::getFramesSent).register(registry);
+
+            Gauge.builder("rehabfit.llm.permits.available", llmGateway, LlmGateway::getAvailablePermits).register(registry);
+            Gauge.builder("rehabfit.llm.permits.max", llmGateway, LlmGateway::getMaxConcurrent).register(registry);
+            FunctionCounter.builder("rehabfit.embedding.batches", embeddingBatcher, EmbeddingBatcher::getBatchesSent).register(registry);
+            FunctionCounter.builder("rehabfit.embedding.texts", embeddingBatcher, EmbeddingBatcher::getTextsSent).register(registry);
+            Gauge.builder("rehabfit.embedding.queue", embeddingBatcher, EmbeddingBatcher::getQueueDepth).register(registry);
+
+            FunctionCounter.builder("rehabfit.dashboard.recomputations", dashboardService, DashboardService::getRecomputations).register(registry);
+            FunctionCounter.builder("rehabfit.dashboard.debounced", dashboardService, DashboardService::getDebounced).register(registry);
+            Gauge.builder("rehabfit.dashboard.pending", dashboardService, DashboardService::getPendingCount).register(registry);
+
+            FunctionCounter.builder("rehabfit.outbox.entries", outboxWorker, IndexOutboxWorker::getIndexed).tag("result", "indexed").register(registry);
+            FunctionCounter.builder("rehabfit.outbox.entries", outboxWorker, IndexOutboxWorker::getSuperseded).tag("result", "superseded").register(registry);
+            FunctionCounter.builder("rehabfit.outbox.entries", outboxWorker, IndexOutboxWorker::getUnchanged).tag("result", "unchanged").register(registry);
+            FunctionCounter.builder("rehabfit.outbox.entries", outboxWorker, IndexOutboxWorker::getFailures).tag("result", "failed").register(registry);
+            // These three query the database on every scrape
+            Gauge.builder("rehabfit.outbox.pending", outboxWorker, IndexOutboxWorker::getQueueDepth).register(registry);
+            Gauge.builder("rehabfit.outbox.dead_lettered", outboxWorker, IndexOutboxWorker::getDeadLettered).register(registry);
+            Gauge.builder("rehabfit.outbox.lag", outboxWorker, w -> w.getLagMillis() / 1000.0).baseUnit("seconds").register(registry);
+        };
+    }
+
+    // Connection pool of each upstream HTTP client, read on every scrape
+    @Bean
+    public MeterBinder upstreamPoolMeters(UpstreamClientRegistry upstreamClients) {
+        return registry -> {
+            for (Upstream upstream : Upstream.values()) {
+                poolGauge(registry, upstreamClients, upstream, "leased", UpstreamClientRegistry.PoolStats::leased);
+                poolGauge(registry, upstreamClients, upstream, "available", UpstreamClientRegistry.PoolStats::available);
+                poolGauge(registry, upstreamClients, upstream, "pending", UpstreamClientRegistry.PoolStats::pending);
+                Gauge.builder("rehabfit.upstream.connections.max", upstreamClients, c -> c.poolStats(upstream).max())
+                    .tag("upstream", upstream.getKey())
+                    .register(registry);
+            }
+        };
+    }
+
+    private static void poolGauge(MeterRegistry registry, UpstreamClientRegistry upstreamClients, Upstream upstream,
+                                  String state, ToIntFunction<UpstreamClientRegistry.PoolStats> value) {
+        Gauge.builder("rehabfit.upstream.connections", upstreamClients, c -> value.applyAsInt(c.poolStats(upstream)))
+            .description("Upstream HTTP connections by pool state; pending counts requests waiting for one")
+            .tags("upstream", upstream.getKey(), "state", state)
+            .register(registry);
+    }
+
+    private static <T> void cache(MeterRegistry registry, String name, T cache,
+                                  ToDoubleFunction<T> hits, ToDoubleFunction<T> misses, ToDoubleFunction<T> size) {
+        counter(registry, "rehabfit.cache.hits", name, cache, hits);
+        counter(registry, "rehabfit.cache.misses", name, cache, misses);
+        Gauge.builder("rehabfit.cache.size", cache, size).tag("cache", name).register(registry);
+    }
+
+    private static <T> void counter(MeterRegistry registry, String meter, String cacheName, T cache, ToDoubleFunction<T> value) {
+        FunctionCounter.builder(meter, cache, value).tag("cache", cacheName).register(registry);
+    }
+}
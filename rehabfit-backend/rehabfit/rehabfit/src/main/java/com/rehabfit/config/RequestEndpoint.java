@@ -0,0 +1,47 @@
+package com.rehabfit.config;
+
+/**
+ * The endpoint the current thread is working for, such as {@code POST /api/rag/chat}, used to
+ * tag metrics. {@link MetricsConfig} sets it for every request, and {@link #propagate} carries
+ * it onto the app's executors so stages running on pool threads still count towards the
+ * request that started them. Work with no request behind it (schedulers, the outbox worker)
+ * is reported as {@value #BACKGROUND}.
+ */
+public final class RequestEndpoint {
+
+    public static final String BACKGROUND = "background";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RequestEndpoint() {
+    }
+
+    public static String current() {
+        String endpoint = CURRENT.get();
+        return endpoint != null ? endpoint : BACKGROUND;
+    }
+
+    static void set(String endpoint) {
+        CURRENT.set(endpoint);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    /** Wraps a task so it runs under the submitting thread's endpoint; usable as a TaskDecorator. */
+    public static Runnable propagate(Runnable task) {
+        String endpoint = CURRENT.get();
+        if (endpoint == null) return task;
+        return () -> {
+            String previous = CURRENT.get();
+            CURRENT.set(endpoint);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) CURRENT.remove();
+                else CURRENT.set(previous);
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package com.rehabfit.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The stages one request went through, with their start offsets and durations. Started by
+ * {@link ServerTimingFilter}; stages are added by {@code StageMetrics} and the auth filter, and
+ * {@link #propagate} carries it onto the app's executors like {@link RequestEndpoint}. Rendered
+ * as a {@code Server-Timing} header and, on request, as a JSON timeline.
+ */
+public final class RequestTimeline {
+
+    private static final ThreadLocal<RequestTimeline> CURRENT = new ThreadLocal<>();
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    // A long stream could otherwise keep adding stages after the response went out
+    private static final int MAX_ENTRIES = 256;
+
+    private final long startedAt = System.nanoTime();
+    private final boolean detailed;
+    private final List<Entry> entries = new ArrayList<>();
+    // Offset from startedAt; nanoTime itself may be negative
+    private volatile long handledAt = -1;
+
+    private RequestTimeline(boolean detailed) {
+        this.detailed = detailed;
+    }
+
+    static RequestTimeline begin(boolean detailed) {
+        RequestTimeline timeline = new RequestTimeline(detailed);
+        CURRENT.set(timeline);
+        return timeline;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /** The timeline of the request this thread works for, or null outside a timed request. */
+    public static RequestTimeline current() {
+        return CURRENT.get();
+    }
+
+    /** Adds a stage that just finished to the current request's timeline, if there is one. */
+    public static void record(String stage, long durationNanos, String outcome) {
+        RequestTimeline timeline = CURRENT.get();
+        if (timeline != null) timeline.add(stage, durationNanos, outcome);
+    }
+
+    public synchronized void add(String stage, long durationNanos, String outcome) {
+        if (entries.size() >= MAX_ENTRIES) return;
+        long startNanos = System.nanoTime() - durationNanos - startedAt;
+        entries.add(new Entry(stage, Math.max(0, startNanos), durationNanos, outcome));
+    }
+
+    /** Marks the point where the handler returned and the body is about to be written. */
+    public void markHandled() {
+        if (handledAt < 0) handledAt = System.nanoTime() - startedAt;
+    }
+
+    /** Records the time since {@link #markHandled} as serialization. */
+    void recordSerialization() {
+        if (handledAt >= 0) add("serialization", System.nanoTime() - startedAt - handledAt, "success");
+    }
+
+    /** Whether the client asked for the full timeline as well as the Server-Timing summary. */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    /** Per-stage totals (with a call count when a stage ran more than once) and the time so far. */
+    public synchronized String serverTiming() {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            long[] total = totals.computeIfAbsent(entry.stage(), s -> new long[2]);
+            total[0] += entry.durationNanos();
+            total[1]++;
+        }
+        StringBuilder header = new StringBuilder();
+        totals.forEach((stage, total) -> {
+            header.append(stage).append(";dur=").append(millis(total[0]));
+            if (total[1] > 1) header.append(";desc=\"").append(total[1]).append(" calls\"");
+            header.append(", ");
+        });
+        return header.append("total;dur=").append(millis(System.nanoTime() - startedAt)).toString();
+    }
+
+    /** Every stage in the order it finished, as compact JSON for a response header. */
+    public synchronized String timelineJson() {
+        List<Map<String, Object>> stages = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            Map<String, Object> stage = new LinkedHashMap<>();
+            stage.put("stage", entry.stage());
+            stage.put("startMs", roundedMillis(entry.startNanos()));
+            stage.put("durationMs", roundedMillis(entry.durationNanos()));
+            stage.put("outcome", entry.outcome());
+            stages.add(stage);
+        }
+        Map<String, Object> timeline = new LinkedHashMap<>();
+        timeline.put("totalMs", roundedMillis(System.nanoTime() - startedAt));
+        timeline.put("stages", stages);
+        try {
+            return JSON.writeValueAsString(timeline);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Wraps a task so it records into the submitting thread's timeline; usable in a TaskDecorator. */
+    public static Runnable propagate(Runnable task) {
+        RequestTimeline timeline = CURRENT.get();
+        if (timeline == null) return task;
+        return () -> {
+            RequestTimeline previous = CURRENT.get();
+            CURRENT.set(timeline);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) CURRENT.remove();
+                else CURRENT.set(previous);
+            }
+        };
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+
+    private static double roundedMillis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+
+    private record Entry(String stage, long startNanos, long durationNanos, String outcome) {}
+}
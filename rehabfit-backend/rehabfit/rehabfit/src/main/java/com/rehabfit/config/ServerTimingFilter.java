@@ -0,0 +1,67 @@
+package com.rehabfit.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.CorsConfigurationSource;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Starts a {@link RequestTimeline} for each request and reports it in a {@code Server-Timing}
+ * header, plus the full timeline as JSON in {@value #TIMELINE_HEADER} when the request carries
+ * {@code X-Debug-Timing: true} and the timeline is enabled. Browsers only get to read the
+ * timings from origins the CORS configuration allows.
+ *
+ * <p>Headers must go out before the body, so {@code ServerTimingAdvice} sets them just before a
+ * response body is written; they cover the request up to that point. Responses that are still
+ * uncommitted when the chain returns (no body, or one that stayed in the buffer) get them
+ * rewritten here with serialization included. Streamed responses (SSE, exports) start before
+ * their stages run and carry no timing; their stages still show up in the metrics.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String DEBUG_HEADER = "X-Debug-Timing";
+    public static final String TIMELINE_HEADER = "X-Request-Timeline";
+
+    private final boolean timelineEnabled;
+    private final CorsConfigurationSource cors;
+
+    public ServerTimingFilter(boolean timelineEnabled, CorsConfigurationSource cors) {
+        this.timelineEnabled = timelineEnabled;
+        this.cors = cors;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean detailed = timelineEnabled && "true".equalsIgnoreCase(request.getHeader(DEBUG_HEADER));
+        RequestTimeline timeline = RequestTimeline.begin(detailed);
+        // Lets the browser expose the timings to the page's scripts as well as to devtools
+        String origin = request.getHeader(HttpHeaders.ORIGIN);
+        if (origin != null && isAllowedOrigin(request, origin)) response.setHeader("Timing-Allow-Origin", origin);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestTimeline.end();
+            if (!request.isAsyncStarted() && !response.isCommitted()) {
+                timeline.recordSerialization();
+                writeHeaders(timeline, response);
+            }
+        }
+    }
+
+    private boolean isAllowedOrigin(HttpServletRequest request, String origin) {
+        CorsConfiguration config = cors.getCorsConfiguration(request);
+        return config != null && config.checkOrigin(origin) != null;
+    }
+
+    static void writeHeaders(RequestTimeline timeline, HttpServletResponse response) {
+        response.setHeader("Server-Timing", timeline.serverTiming());
+        if (timeline.isDetailed()) response.setHeader(TIMELINE_HEADER, timeline.timelineJson());
+    }
+}
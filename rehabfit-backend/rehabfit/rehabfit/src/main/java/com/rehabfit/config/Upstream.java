@@ -0,0 +1,30 @@
+package com.rehabfit.config;
+
+/**
+ * Named upstream services the backend talks to. Each one gets its own connection pool
+ * and timeouts, configured under {@code upstream.<key>.*}.
+ */
+public enum Upstream {
+    EMBEDDING("embedding", 1000, 10000, 50),
+    VECTOR_STORE("vector-store", 2000, 10000, 50),
+    YOUTUBE("youtube", 2000, 5000, 20),
+    GOOGLE_OAUTH("google-oauth", 2000, 5000, 20),
+    LLM("llm", 2000, 60000, 64);
+
+    private final String key;
+    private final int defaultConnectTimeoutMs;
+    private final int defaultReadTimeoutMs;
+    private final int defaultMaxConnections;
+
+    Upstream(String key, int defaultConnectTimeoutMs, int defaultReadTimeoutMs, int defaultMaxConnections) {
+        this.key = key;
+        this.defaultConnectTimeoutMs = defaultConnectTimeoutMs;
+        this.defaultReadTimeoutMs = defaultReadTimeoutMs;
+        this.defaultMaxConnections = defaultMaxConnections;
+    }
+
+    public String getKey() { return key; }
+    public int getDefaultConnectTimeoutMs() { return defaultConnectTimeoutMs; }
+    public int getDefaultReadTimeoutMs() { return defaultReadTimeoutMs; }
+    public int getDefaultMaxConnections() { return defaultMaxConnections; }
+}
@@ -0,0 +1,125 @@
+package com.rehabfit.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Central registry of pooled HTTP clients, one per {@link Upstream}.
+ * Every outbound call should go through here instead of {@code new RestTemplate()} so that
+ * connections are reused and a slow upstream can't hold a request thread forever.
+ */
+@Component
+public class UpstreamClientRegistry {
+
+    @Autowired
+    private Environment environment;
+
+    private final Map<Upstream, Settings> settings = new EnumMap<>(Upstream.class);
+    private final Map<Upstream, PoolingHttpClientConnectionManager> pools = new EnumMap<>(Upstream.class);
+    private final Map<Upstream, CloseableHttpClient> httpClients = new EnumMap<>(Upstream.class);
+    private final Map<Upstream, RestTemplate> restTemplates = new EnumMap<>(Upstream.class);
+    private final Map<Upstream, HttpClient> asyncClients = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (Upstream upstream : Upstream.values()) {
+            Settings s = loadSettings(upstream);
+            settings.put(upstream, s);
+
+            PoolingHttpClientConnectionManager pool = PoolingHttpClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(s.maxConnections())
+                    .setMaxConnPerRoute(s.maxConnectionsPerRoute())
+                    .setDefaultConnectionConfig(ConnectionConfig.custom()
+                            .setConnectTimeout(Timeout.ofMilliseconds(s.connectTimeoutMs()))
+                            .setSocketTimeout(Timeout.ofMilliseconds(s.readTimeoutMs()))
+                            .setTimeToLive(TimeValue.ofMinutes(5))
+                            .build())
+                    .build();
+            CloseableHttpClient client = HttpClients.custom()
+                    .setConnectionManager(pool)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectionRequestTimeout(Timeout.ofMilliseconds(s.connectTimeoutMs()))
+                            .setResponseTimeout(Timeout.ofMilliseconds(s.readTimeoutMs()))
+                            .build())
+                    .evictIdleConnections(TimeValue.ofSeconds(30))
+                    .evictExpiredConnections()
+                    .build();
+
+            pools.put(upstream, pool);
+            httpClients.put(upstream, client);
+            restTemplates.put(upstream, new RestTemplate(new HttpComponentsClientHttpRequestFactory(client)));
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (CloseableHttpClient client : httpClients.values()) {
+            client.close();
+        }
+    }
+
+    public RestTemplate restTemplate(Upstream upstream) {
+        return restTemplates.get(upstream);
+    }
+
+    /**
+     * Non-blocking client for the upstream, for callers that must not hold a thread while
+     * waiting on the network. Created on first use and shared; apply
+     * {@link Settings#readTimeoutMs()} per request.
+     */
+    public HttpClient asyncClient(Upstream upstream) {
+        return asyncClients.computeIfAbsent(upstream, u -> HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(settings.get(u).connectTimeoutMs()))
+                // One connection per in-flight call; HTTP/2 would funnel long streams through a single connection
+                .version(HttpClient.Version.HTTP_1_1)
+                .build());
+    }
+
+    public Settings settings(Upstream upstream) {
+        return settings.get(upstream);
+    }
+
+    /**
+     * Snapshot of the connection pool for an upstream: connections leased, idle, and
+     * requests waiting for a connection.
+     */
+    public PoolStats poolStats(Upstream upstream) {
+        org.apache.hc.core5.pool.PoolStats stats = pools.get(upstream).getTotalStats();
+        return new PoolStats(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+    }
+
+    private Settings loadSettings(Upstream upstream) {
+        String prefix = "upstream." + upstream.getKey() + ".";
+        int maxConnections = environment.getProperty(prefix + "max-connections", Integer.class,
+                upstream.getDefaultMaxConnections());
+        return new Settings(
+                environment.getProperty(prefix + "connect-timeout-ms", Integer.class, upstream.getDefaultConnectTimeoutMs()),
+                environment.getProperty(prefix + "read-timeout-ms", Integer.class, upstream.getDefaultReadTimeoutMs()),
+                maxConnections,
+                environment.getProperty(prefix + "max-connections-per-route", Integer.class, maxConnections));
+    }
+
+    public record Settings(int connectTimeoutMs, int readTimeoutMs, int maxConnections, int maxConnectionsPerRoute) {}
+
+    public record PoolStats(int leased, int available, int pending, int max) {}
+}
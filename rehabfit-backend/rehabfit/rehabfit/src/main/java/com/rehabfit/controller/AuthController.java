@@ -1,16 +1,21 @@
 package com.rehabfit.controller;
 
 import org.springframework.dao.DataIntegrityViolationException;
+import com.rehabfit.config.Upstream;
+import com.rehabfit.config.UpstreamClientRegistry;
+import com.rehabfit.dto.UserProfile;
 import com.rehabfit.model.User;
 import com.rehabfit.repository.UserRepository;
 import com.rehabfit.security.JWTUtil;
 import com.rehabfit.service.AuthService;
-import com.rehabfit.service.RagService;
+import com.rehabfit.service.UserProfileCache;
+import com.rehabfit.service.UserDataChangedEvent;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
@@ -47,7 +52,16 @@ public class AuthController {
     private UserRepository userRepository;
 
     @Autowired
-    private RagService ragService;
+    private UserProfileCache profileCache;
+
+    @Autowired
+    private UpstreamClientRegistry upstreamClients;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${google.oauth.tokeninfo-url:https://www.googleapis.com/oauth2/v3/tokeninfo}")
+    private String tokenInfoEndpoint;
 
     @PostMapping("/register")
     public ResponseEntity<?> register(@RequestBody User user) {
@@ -62,17 +76,11 @@ public class AuthController {
                     .body(Map.of("message", "Password is required"));
             }
 
+            // Saving also queues the profile for RAG indexing
             User savedUser = authService.register(user);
+            eventPublisher.publishEvent(new UserDataChangedEvent(savedUser.getId().toString(), UserDataChangedEvent.Kind.PROFILE));
             
-            // Upsert user's name for personalization
-            ragService.upsertUserProfile(
-                savedUser.getId().toString(),
-                savedUser.getName(),
-                savedUser.getInjuryType(),
-                savedUser.getFitnessGoal()
-            );
-            
-            String token = jwtUtil.generateToken(savedUser.getEmail());
+            String token = jwtUtil.generateToken(savedUser);
             return ResponseEntity.ok(new TokenResponse(token));
             
         } catch (DataIntegrityViolationException e) {
@@ -99,16 +107,6 @@ public class AuthController {
 
             String token = authService.login(request.getEmail(), request.getPassword());
             
-            // Update RAG system with user profile data
-            userRepository.findByEmail(request.getEmail()).ifPresent(user ->
-                ragService.upsertUserProfile(
-                    user.getId().toString(), 
-                    user.getName(), 
-                    user.getInjuryType(), 
-                    user.getFitnessGoal()
-                )
-            );
-            
             return ResponseEntity.ok(new TokenResponse(token));
             
         } catch (Exception e) {
@@ -142,10 +140,10 @@ public class AuthController {
 
             // Verify the Google access token by calling Google's tokeninfo endpoint
             String token = request.getToken();
-            String tokenInfoUrl = "https://www.googleapis.com/oauth2/v3/tokeninfo?access_token=" + token;
+            String tokenInfoUrl = tokenInfoEndpoint + "?access_token=" + token;
             
             System.out.println("Calling Google tokeninfo API...");
-            RestTemplate restTemplate = new RestTemplate();
+            RestTemplate restTemplate = upstreamClients.restTemplate(Upstream.GOOGLE_OAUTH);
             ResponseEntity<Map> tokenInfoResponse = restTemplate.getForEntity(tokenInfoUrl, Map.class);
             
             System.out.println("Google API Response Status: " + tokenInfoResponse.getStatusCode());
@@ -182,21 +180,15 @@ public class AuthController {
                     User newUser = new User();
                     newUser.setEmail(request.getEmail());
                     newUser.setName(request.getName() != null ? request.getName() : request.getEmail());
-                    return userRepository.save(newUser);
+                    User savedUser = authService.saveProfile(newUser);
+                    eventPublisher.publishEvent(new UserDataChangedEvent(savedUser.getId().toString(), UserDataChangedEvent.Kind.PROFILE));
+                    return savedUser;
                 });
 
             System.out.println("User found/created: " + user.getId());
 
-            // Upsert user's name for personalization
-            ragService.upsertUserProfile(
-                user.getId().toString(), 
-                user.getName(), 
-                user.getInjuryType(), 
-                user.getFitnessGoal()
-            );
-
             System.out.println("Generating JWT...");
-            String jwt = jwtUtil.generateToken(request.getEmail());
+            String jwt = jwtUtil.generateToken(user);
             System.out.println("SUCCESS: JWT generated");
             return ResponseEntity.ok(new TokenResponse(jwt));
                 
@@ -231,7 +223,8 @@ public class AuthController {
                     .body(Map.of("message", "Invalid token"));
             }
 
-            User user = userRepository.findByEmail(email)
+            // Served from the profile cache; the snapshot leaves out the password hash
+            UserProfile user = profileCache.findByEmail(email)
                     .orElse(null);
             
             if (user == null) {
@@ -311,16 +304,9 @@ public class AuthController {
                 user.setInjuryDescription(request.getInjuryDescription());
             }
 
-            // Save updated user
-            User updatedUser = userRepository.save(user);
-
-            // Update RAG system with new profile data
-            ragService.upsertUserProfile(
-                updatedUser.getId().toString(),
-                updatedUser.getName(),
-                updatedUser.getInjuryType(),
-                updatedUser.getFitnessGoal()
-            );
+            // Save updated user; the profile is re-indexed for RAG from the outbox
+            User updatedUser = authService.saveProfile(user);
+            eventPublisher.publishEvent(new UserDataChangedEvent(updatedUser.getId().toString(), UserDataChangedEvent.Kind.PROFILE));
 
             // Create response map
             Map<String, Object> response = new HashMap<>();
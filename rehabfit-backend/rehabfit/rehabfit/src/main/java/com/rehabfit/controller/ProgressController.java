@@ -1,69 +1,140 @@
 package com.rehabfit.controller;
 
 import com.rehabfit.model.Progress;
-import com.rehabfit.repository.ProgressRepository;
-import com.rehabfit.service.OpenAiService;
-import com.rehabfit.service.PineconeService;
-import com.rehabfit.security.JWTUtil;
-import com.rehabfit.repository.UserRepository;
+import com.rehabfit.service.IndexOutboxService;
+import com.rehabfit.service.ProgressExportService;
+import com.rehabfit.service.ProgressImportService;
+import com.rehabfit.service.ProgressRollupService;
+import com.rehabfit.service.ProgressService;
+import com.rehabfit.service.UserDataChangedEvent;
+import com.rehabfit.security.CurrentUserResolver;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/progress")
 public class ProgressController {
-    @Autowired private ProgressRepository progressRepository;
-    @Autowired private OpenAiService openAiService;
-    @Autowired private PineconeService pineconeService;
-    @Autowired private JWTUtil jwtUtil;
-    @Autowired private UserRepository userRepository;
+    @Autowired private ProgressService progressService;
+    @Autowired private ProgressRollupService progressRollups;
+    @Autowired private ProgressImportService progressImport;
+    @Autowired private ProgressExportService progressExport;
+    @Autowired private IndexOutboxService indexOutbox;
+    @Autowired private CurrentUserResolver currentUser;
+    @Autowired private ApplicationEventPublisher eventPublisher;
 
     @PostMapping
     public ResponseEntity<?> logProgress(@RequestBody Progress req, @RequestHeader("Authorization") String authHeader) {
         String userId = extractUserId(authHeader);
 
-        // 1. Save to DB
-        req.setUserId(userId);
-        progressRepository.save(req);
-
-        // 2. Prepare text and embed/upsert to Pinecone
-        String text = String.format("Pain level %d, Mobility %d%%, Strength %d on %s",
-                req.getPainLevel(), req.getMobility(), req.getStrength(), req.getDate());
-        var embedding = openAiService.createEmbedding(text);
-        pineconeService.upsert("progress-" + req.getId(), embedding, Map.of(
-                "userId", userId, "text", text, "type", "progress", "date", req.getDate()
-        ));
+        // Save to DB; the entry is embedded and indexed for RAG from the outbox
+        progressService.logProgress(userId, req);
+        eventPublisher.publishEvent(new UserDataChangedEvent(userId, UserDataChangedEvent.Kind.PROGRESS));
 
         return ResponseEntity.ok("Progress logged and indexed for RAG.");
     }
 
-    // Store LLM suggestion in Pinecone for this user
+    // Store LLM suggestion in the vector store for this user
     @PostMapping("/llm-suggestion")
     public ResponseEntity<?> logLlmSuggestion(@RequestBody Map<String, String> req, @RequestHeader("Authorization") String authHeader) {
         String userId = extractUserId(authHeader);
         String suggestion = req.getOrDefault("suggestion", "");
         if (suggestion.isBlank()) return ResponseEntity.badRequest().body("Missing suggestion text.");
 
-        var embedding = openAiService.createEmbedding(suggestion);
-        pineconeService.upsert("llm-suggestion-" + System.currentTimeMillis(), embedding, Map.of(
-                "userId", userId, "text", suggestion, "type", "llm_suggestion"
-        ));
+        indexOutbox.enqueue(userId, "llm-suggestion-" + System.currentTimeMillis(), suggestion, Map.of("type", "llm_suggestion"));
 
         return ResponseEntity.ok("LLM suggestion logged and indexed for RAG.");
     }
 
+    // Progress history, newest first; pass the returned nextCursor to get the following page
+    @GetMapping("/history")
+    public ResponseEntity<?> history(@RequestHeader("Authorization") String authHeader,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "20") int size) {
+        String userId = extractUserId(authHeader);
+        try {
+            return ResponseEntity.ok(progressService.history(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Aggregates over the whole log plus weekly averages, computed in the database
+    @GetMapping("/summary")
+    public ResponseEntity<?> summary(@RequestHeader("Authorization") String authHeader,
+                                     @RequestParam(defaultValue = "12") int weeks) {
+        String userId = extractUserId(authHeader);
+        return ResponseEntity.ok(Map.of(
+            "stats", progressService.stats(userId),
+            "weekly", progressService.weekly(userId, weeks)));
+    }
+
+    // Bulk import: NDJSON (one object per line) or CSV (date,painLevel,mobility,strength), streamed
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "application/jsonl", "text/csv", "text/plain"})
+    public ResponseEntity<?> importProgress(@RequestHeader("Authorization") String authHeader,
+                                            @RequestHeader("Content-Type") String contentType,
+                                            @RequestParam(defaultValue = "true") boolean index,
+                                            InputStream body) throws IOException {
+        String userId = extractUserId(authHeader);
+        String type = contentType.toLowerCase();
+        // Spreadsheet and browser uploads often arrive as text/plain whatever their content
+        ProgressImportService.Format format = type.startsWith("text/csv") ? ProgressImportService.Format.CSV
+            : type.startsWith("text/plain") ? ProgressImportService.Format.DETECT
+            : ProgressImportService.Format.NDJSON;
+        return ResponseEntity.ok(progressImport.importProgress(userId, body, format, index));
+    }
+
+    // Full history as CSV or NDJSON, streamed from a database cursor; gzip-encoded when the client accepts it
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProgress(@RequestHeader("Authorization") String authHeader,
+                                                                @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+                                                                @RequestParam(defaultValue = "csv") String format,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                @RequestParam(defaultValue = "true") boolean compress) {
+        String userId = extractUserId(authHeader);
+        ProgressExportService.Format exportFormat = "ndjson".equalsIgnoreCase(format)
+            ? ProgressExportService.Format.NDJSON : ProgressExportService.Format.CSV;
+        boolean gzip = compress && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(exportFormat == ProgressExportService.Format.CSV
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8) : MediaType.parseMediaType("application/x-ndjson"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"progress-" + userId + "."
+                + (exportFormat == ProgressExportService.Format.CSV ? "csv" : "ndjson") + (gzip ? ".gz" : "") + "\"")
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .cacheControl(CacheControl.noStore());
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(out -> progressExport.export(userId, from, to, exportFormat, gzip, out));
+    }
+
+    // Backfill: recompute every user's rollups from the raw progress rows
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<?> rebuildRollups() {
+        return ResponseEntity.ok(progressRollups.rebuildAll());
+    }
+
+    // Compare the rollups with the raw rows; repair=true rebuilds the users that differ
+    @GetMapping("/rollups/check")
+    public ResponseEntity<?> checkRollups(@RequestParam(defaultValue = "false") boolean repair) {
+        return ResponseEntity.ok(progressRollups.checkAll(repair));
+    }
+
     // Helper: Extract userId from JWT
     private String extractUserId(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            throw new RuntimeException("Missing or invalid Authorization header");
-        }
-        String token = authHeader.substring(7);
-        String email = jwtUtil.validateTokenAndGetEmail(token);
-        if (email == null) throw new RuntimeException("Invalid token");
-        return userRepository.findByEmail(email)
-            .orElseThrow(() -> new RuntimeException("User not found"))
-            .getId().toString();
+        return currentUser.userId(authHeader);
     }
 }
\ No newline at end of file
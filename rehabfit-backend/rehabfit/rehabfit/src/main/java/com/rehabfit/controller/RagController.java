@@ -1,12 +1,19 @@
 package com.rehabfit.controller;
 import java.util.stream.Collectors;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.service.DashboardCache;
+import com.rehabfit.service.DashboardService;
+import com.rehabfit.service.IndexOutboxService;
+import com.rehabfit.service.IndexReconciler;
 import com.rehabfit.service.RagService;
+import com.rehabfit.service.SseStreamRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.MediaType;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.Map;
 import java.util.UUID;
@@ -20,8 +27,23 @@ public class RagController {
     @Autowired
     private RagService ragService;
 
-    @Value("${youtube.api.key}")
-    private String youtubeApiKey;
+    @Autowired
+    private DashboardCache dashboardCache;
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    @Autowired
+    private IndexOutboxService indexOutbox;
+
+    @Autowired
+    private IndexReconciler indexReconciler;
+
+    @Autowired
+    private SseStreamRegistry sseStreams;
+
+    @Value("${chat.stream.mode:blocking}")
+    private String chatStreamMode;
 
     @PostMapping("/upsert-chat")
     public ResponseEntity<?> upsertChat(@RequestBody Map<String, String> body, @RequestHeader("Authorization") String authHeader) {
@@ -29,8 +51,8 @@ public class RagController {
         // Extract userId from JWT or session (implement this as needed)
         String userId = ragService.getUserIdFromAuthHeader(authHeader);
         String docId = UUID.randomUUID().toString();
-        List<Double> embedding = ragService.getHuggingFaceEmbedding(message);
-        ragService.upsertToPinecone(userId, docId, message, embedding, null);
+        // Embedding and the vector write happen in the background
+        indexOutbox.enqueue(userId, docId, message, Map.of("type", "chat"));
         return ResponseEntity.ok().build();
     }
 
@@ -55,37 +77,70 @@ public SseEmitter chatStream(@RequestBody Map<String, String> body, @RequestHead
     String question = body.get("question");
     String userId = ragService.getUserIdFromAuthHeader(authHeader);
     
-    SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
-    
-    // Process in a separate thread to not block
-    new Thread(() -> {
-        try {
-            ragService.answerWithRagAndVideosStreaming(userId, question, emitter);
-            emitter.complete();
-        } catch (Exception e) {
-            emitter.completeWithError(e);
-        }
-    }).start();
-    
-    return emitter;
+    if ("reactive".equalsIgnoreCase(chatStreamMode)) {
+        // Non-blocking pipeline; no thread is held for the stream, and writes go to the stream writers
+        return sseStreams.startAsync(userId, stream -> ragService.answerWithRagReactive(userId, question, stream));
+    }
+    // Runs on the managed streaming executor; the registry handles timeouts, heartbeats and disconnects
+    return sseStreams.start(userId, stream -> ragService.answerWithRagAndVideosStreaming(userId, question, stream));
 }
 
 @GetMapping("/dashboard")
-public ResponseEntity<?> getDashboardData(@RequestHeader("Authorization") String authHeader) {
+public ResponseEntity<?> getDashboardData(@RequestHeader("Authorization") String authHeader,
+                                          @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
     String userId = ragService.getUserIdFromAuthHeader(authHeader);
-    Map<String, Object> dashboard = ragService.getDashboardData(userId);
-    return ResponseEntity.ok(dashboard);
+
+    // The ETag covers the user's inputs and the insight snapshot, so a client holding it already has this dashboard
+    DashboardService.DashboardVersion dashboardVersion = dashboardService.currentVersion(userId);
+    String etag = dashboardVersion.etag();
+    String version = etag.substring(1, etag.length() - 1);
+    if (etagMatches(ifNoneMatch, etag)) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .build();
+    }
+
+    Map<String, Object> dashboard = dashboardCache.get(userId, version);
+    if (dashboard == null) {
+        dashboard = dashboardService.getDashboard(userId, dashboardVersion);
+        if (Boolean.TRUE.equals(dashboard.get("partial"))) {
+            // Don't cache or validate a degraded dashboard, so loads keep checking whether it is due for a retry
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(dashboard);
+        }
+        dashboardCache.put(userId, version, dashboard);
+    }
+    return ResponseEntity.ok()
+        .eTag(etag)
+        .cacheControl(CacheControl.noCache().cachePrivate())
+        .body(dashboard);
+}
+
+private static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) return false;
+    for (String candidate : ifNoneMatch.split(",")) {
+        String tag = candidate.trim();
+        if (tag.startsWith("W/")) tag = tag.substring(2);
+        if (tag.equals("*") || tag.equals(etag)) return true;
+    }
+    return false;
 }
 
 @PostMapping("/pinecone/delete-all")
 public ResponseEntity<?> deleteAllPinecone() {
-    ragService.deleteAllFromPinecone();
-    return ResponseEntity.ok("All Pinecone records deleted.");
+    ragService.deleteAllVectors();
+    return ResponseEntity.ok("All vector store records deleted.");
+}
+
+// Re-sync the vector index with the database; only drifted documents are re-embedded
+@PostMapping("/index/reconcile")
+public ResponseEntity<?> reconcileIndex() {
+    return ResponseEntity.ok(indexReconciler.reconcile());
 }
 
 @GetMapping("/test-youtube")
 public ResponseEntity<?> testYouTube(@RequestParam String query) {
-    List<Map<String, String>> urls = ragService.getYouTubeVideos(query, youtubeApiKey, 5);
+    List<Map<String, String>> urls = ragService.getYouTubeVideos(query, 5);
     return ResponseEntity.ok(Map.of("urls", urls));
 }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.rehabfit.controller;
+
+import com.rehabfit.config.RequestTimeline;
+import com.rehabfit.config.ServerTimingFilter;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Sets the timing headers just before a RAG or progress response body is written. Most bodies
+ * carry a Content-Length and are committed as soon as they are written, so this copy, without
+ * serialization, is what they go out with; {@link ServerTimingFilter} only rewrites the headers
+ * of responses that are still uncommitted at the end.
+ */
+@ControllerAdvice(assignableTypes = {RagController.class, ProgressController.class})
+public class ServerTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+                                  Class<? extends HttpMessageConverter<?>> converterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        RequestTimeline timeline = RequestTimeline.current();
+        if (timeline != null) {
+            timeline.markHandled();
+            response.getHeaders().set("Server-Timing", timeline.serverTiming());
+            if (timeline.isDetailed()) {
+                response.getHeaders().set(ServerTimingFilter.TIMELINE_HEADER, timeline.timelineJson());
+            }
+        }
+        return body;
+    }
+}
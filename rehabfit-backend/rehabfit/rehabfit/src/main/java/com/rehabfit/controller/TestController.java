@@ -1,7 +1,7 @@
 package com.rehabfit.controller;
 
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import com.rehabfit.security.AuthPrincipal;
+import com.rehabfit.security.CurrentUserResolver;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -17,9 +17,8 @@ public class TestController {
 
     @GetMapping("/profile")
     public ProfileResponse getProfile() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = (String) auth.getPrincipal();
-        return new ProfileResponse(email);
+        AuthPrincipal principal = CurrentUserResolver.current();
+        return new ProfileResponse(principal == null ? null : principal.email());
     }
 
     static class ProfileResponse {
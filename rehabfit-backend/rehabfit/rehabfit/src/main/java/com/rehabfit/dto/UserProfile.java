@@ -0,0 +1,45 @@
+package com.rehabfit.dto;
+
+import com.rehabfit.model.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Immutable, detached snapshot of a user's profile, safe to share between requests and
+ * threads. Everything on {@link User} except the password hash.
+ */
+public record UserProfile(
+        Long id,
+        LocalDateTime createdAt,
+        String name,
+        String email,
+        String injuryType,
+        String fitnessGoal,
+        Integer age,
+        Double weight,
+        Double height,
+        String activityLevel,
+        String injuryDescription,
+        LocalDate injuryDate,
+        Set<String> equipmentList) {
+
+    // Must be called while the entity is attached, so the equipment collection can load
+    public static UserProfile from(User user) {
+        return new UserProfile(
+                user.getId(),
+                user.getCreatedAt(),
+                user.getName(),
+                user.getEmail(),
+                user.getInjuryType(),
+                user.getFitnessGoal(),
+                user.getAge(),
+                user.getWeight(),
+                user.getHeight(),
+                user.getActivityLevel(),
+                user.getInjuryDescription(),
+                user.getInjuryDate(),
+                user.getEquipmentList() == null ? Set.of() : Set.copyOf(user.getEquipmentList()));
+    }
+}
@@ -0,0 +1,54 @@
+package com.rehabfit.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Precomputed LLM and video sections of a user's dashboard. A new snapshot with a higher
+ * {@code snapshotVersion} is written in the background after each profile or progress change;
+ * versions are unique per user, so two nodes can't both write the same one.
+ */
+@Entity
+@Table(name = "dashboard_insight", uniqueConstraints = @UniqueConstraint(name = "uk_dashboard_insight_user_version",
+        columnNames = {"userId", "snapshotVersion"}))
+@Data
+@NoArgsConstructor
+public class DashboardInsight {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String userId;
+
+    private long snapshotVersion;
+
+    // UserContextVersionService stamp of the inputs this snapshot was generated from
+    private String inputsVersion;
+
+    private String estimatedRecovery;
+
+    // JSON arrays, stored as text so the whole snapshot is a single row read
+    @Column(columnDefinition = "TEXT")
+    private String dietPlanJson;
+
+    @Column(columnDefinition = "TEXT")
+    private String llmSummaryJson;
+
+    @Column(columnDefinition = "TEXT")
+    private String videosJson;
+
+    // Set when some stages were skipped; such a snapshot is regenerated after a backoff.
+    // Nullable so the column can be added to existing tables
+    private Boolean partial;
+
+    // Comma-separated names of the skipped stages
+    private String degradedStages;
+
+    @Column(name = "created_at")
+    @org.hibernate.annotations.CreationTimestamp
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,37 @@
+package com.rehabfit.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * What the vector store currently holds for one document: a hash of the indexed text and
+ * metadata, and the embedding model that produced the vector.
+ */
+@Entity
+@Table(name = "index_fingerprint", uniqueConstraints = @UniqueConstraint(name = "uk_index_fingerprint_doc", columnNames = {"userId", "docId"}))
+@Data
+@NoArgsConstructor
+public class IndexFingerprint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String userId;
+
+    @Column(nullable = false)
+    private String docId;
+
+    // The "type" metadata of the document (profile, progress, chat, ...)
+    private String docType;
+
+    @Column(length = 64, nullable = false)
+    private String contentHash;
+
+    private String modelVersion;
+
+    private Instant indexedAt;
+}
@@ -0,0 +1,48 @@
+package com.rehabfit.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A document waiting to be embedded and written to the vector store. Rows are inserted in the
+ * same transaction as the change they describe and deleted once indexed.
+ */
+@Entity
+@Table(name = "index_outbox", indexes = @Index(name = "idx_index_outbox_due", columnList = "deadLetter, nextAttemptAt"))
+@Data
+@NoArgsConstructor
+public class IndexOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String userId;
+
+    @Column(nullable = false)
+    private String docId;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String text;
+
+    @Column(columnDefinition = "TEXT")
+    private String metadataJson;
+
+    private int attempts;
+
+    private Instant nextAttemptAt;
+
+    // Set while a worker is indexing the row, so no one indexes another row of the same document
+    private Instant leasedUntil;
+
+    private Instant createdAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    // Set once attempts run out; kept for inspection instead of retried forever
+    private boolean deadLetter;
+}
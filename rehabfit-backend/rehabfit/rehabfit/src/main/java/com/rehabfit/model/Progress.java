@@ -6,6 +6,8 @@ import java.time.LocalDate;
 
 @Entity
 @Data
+// Serves per-user history pages and aggregates in (date, id) order
+@Table(indexes = @Index(name = "idx_progress_user_date", columnList = "user_id, date, id"))
 public class Progress {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -0,0 +1,59 @@
+package com.rehabfit.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Running totals of a user's progress entries for one day, week (starting Monday) or month.
+ * Sums rather than averages are stored, so entries can be added and removed without
+ * touching the raw rows.
+ */
+@Entity
+@Table(name = "progress_rollup", uniqueConstraints = @UniqueConstraint(name = "uk_progress_rollup_bucket",
+        columnNames = {"user_id", "granularity", "bucket_start"}))
+@Data
+@NoArgsConstructor
+public class ProgressRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8, nullable = false)
+    private Granularity granularity;
+
+    @Column(nullable = false)
+    private LocalDate bucketStart;
+
+    private long entries;
+    private long sumPain;
+    private long sumMobility;
+    private long sumStrength;
+
+    public enum Granularity {
+        DAY("day"), WEEK("week"), MONTH("month");
+
+        // The date_trunc unit for this granularity
+        private final String unit;
+
+        Granularity(String unit) {
+            this.unit = unit;
+        }
+
+        public String unit() { return unit; }
+
+        public LocalDate bucketStart(LocalDate date) {
+            return switch (this) {
+                case DAY -> date;
+                case WEEK -> date.with(java.time.DayOfWeek.MONDAY);
+                case MONTH -> date.withDayOfMonth(1);
+            };
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.rehabfit.repository;
+
+import com.rehabfit.model.DashboardInsight;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface DashboardInsightRepository extends JpaRepository<DashboardInsight, Long> {
+    Optional<DashboardInsight> findTopByUserIdOrderBySnapshotVersionDesc(String userId);
+
+    @Query("select max(d.snapshotVersion) from DashboardInsight d where d.userId = :userId")
+    Long findLatestSnapshotVersion(@Param("userId") String userId);
+
+    // Keep a short history per user instead of one row per write forever
+    @Modifying
+    @Transactional
+    @Query("delete from DashboardInsight d where d.userId = :userId and d.snapshotVersion < :version")
+    int deleteOlderThan(@Param("userId") String userId, @Param("version") long version);
+}
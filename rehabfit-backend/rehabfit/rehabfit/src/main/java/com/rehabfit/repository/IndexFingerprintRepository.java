@@ -0,0 +1,22 @@
+package com.rehabfit.repository;
+
+import com.rehabfit.model.IndexFingerprint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IndexFingerprintRepository extends JpaRepository<IndexFingerprint, Long> {
+    Optional<IndexFingerprint> findByUserIdAndDocId(String userId, String docId);
+
+    List<IndexFingerprint> findByDocIdIn(Collection<String> docIds);
+
+    List<IndexFingerprint> findByUserId(String userId);
+
+    @Query("select distinct f.userId from IndexFingerprint f")
+    List<String> findDistinctUserIds();
+}
@@ -0,0 +1,46 @@
+package com.rehabfit.repository;
+
+import com.rehabfit.model.IndexOutbox;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface IndexOutboxRepository extends JpaRepository<IndexOutbox, Long> {
+
+    // Row-locks a batch of due entries; a lock timeout of -2 is SKIP LOCKED, so concurrent workers take different rows.
+    // Only the newest row of a document is taken, and only while no other row of it is leased
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select o from IndexOutbox o where o.deadLetter = false and o.nextAttemptAt <= :now"
+            + " and not exists (select n.id from IndexOutbox n where n.userId = o.userId and n.docId = o.docId and n.id > o.id)"
+            + " and not exists (select l.id from IndexOutbox l where l.userId = o.userId and l.docId = o.docId"
+            + " and l.id <> o.id and l.leasedUntil > :now)"
+            + " order by o.id")
+    List<IndexOutbox> lockDueBatch(@Param("now") Instant now, Pageable page);
+
+    // Older rows of a document that has a newer one would only index stale content; leased rows are left to their worker
+    @Modifying
+    @Query("delete from IndexOutbox o where o.deadLetter = false and (o.leasedUntil is null or o.leasedUntil <= :now)"
+            + " and exists (select n.id from IndexOutbox n where n.userId = o.userId and n.docId = o.docId and n.id > o.id)")
+    int deleteSuperseded(@Param("now") Instant now);
+
+    boolean existsByUserIdAndDocIdAndDeadLetterFalse(String userId, String docId);
+
+    long countByDeadLetterFalse();
+
+    long countByDeadLetterTrue();
+
+    @Query("select min(o.createdAt) from IndexOutbox o where o.deadLetter = false")
+    Instant findOldestPendingCreatedAt();
+}
@@ -1,11 +1,84 @@
 package com.rehabfit.repository;
 
 import com.rehabfit.model.Progress;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProgressRepository extends JpaRepository<Progress, Long> {
     List<Progress> findByUserId(String userId);
-}
\ No newline at end of file
+
+    // Cheap fingerprint of a user's progress log, used to version cached dashboard data
+    @Query("select count(p) as count, max(p.id) as latestId, max(p.date) as latestDate from Progress p where p.userId = :userId")
+    ProgressVersion findVersionByUserId(@Param("userId") String userId);
+
+    // Dated entries newest first; the first page of a keyset walk over (date, id)
+    @Query("select p from Progress p where p.userId = :userId and p.date is not null order by p.date desc, p.id desc")
+    List<Progress> findLatest(@Param("userId") String userId, Pageable page);
+
+    // The page after the (date, id) cursor, in the same order
+    @Query("select p from Progress p where p.userId = :userId and (p.date < :date or (p.date = :date and p.id < :id)) " +
+           "order by p.date desc, p.id desc")
+    List<Progress> findBefore(@Param("userId") String userId, @Param("date") LocalDate date, @Param("id") Long id, Pageable page);
+
+    // Entries older versions saved without a date, keyed on id alone; they follow the dated pages
+    @Query("select p from Progress p where p.userId = :userId and p.date is null and p.id < :id order by p.id desc")
+    List<Progress> findUndatedBefore(@Param("userId") String userId, @Param("id") Long id, Pageable page);
+
+    @Query("select count(p) as count, avg(p.painLevel) as avgPain, avg(p.mobility) as avgMobility, avg(p.strength) as avgStrength, " +
+           "min(p.painLevel) as minPain, max(p.painLevel) as maxPain, min(p.mobility) as minMobility, max(p.mobility) as maxMobility, " +
+           "min(p.strength) as minStrength, max(p.strength) as maxStrength, min(p.date) as firstDate, max(p.date) as latestDate " +
+           "from Progress p where p.userId = :userId")
+    ProgressStats findStatsByUserId(@Param("userId") String userId);
+
+    // Cursor over a date range for exports; rows arrive in fetch-size batches instead of all at once
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select p from Progress p where p.userId = :userId and p.date >= :from and p.date <= :to order by p.date, p.id")
+    Stream<Progress> streamByUserIdBetween(@Param("userId") String userId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Same, for a range with no start: undated entries from older versions come first
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select p from Progress p where p.userId = :userId and (p.date is null or p.date <= :to) order by p.date nulls first, p.id")
+    Stream<Progress> streamByUserIdUpTo(@Param("userId") String userId, @Param("to") LocalDate to);
+
+    @Query("select distinct p.userId from Progress p")
+    List<String> findDistinctUserIds();
+
+    interface ProgressVersion {
+        long getCount();
+        Long getLatestId();
+        LocalDate getLatestDate();
+    }
+
+    interface ProgressStats {
+        long getCount();
+        Double getAvgPain();
+        Double getAvgMobility();
+        Double getAvgStrength();
+        Integer getMinPain();
+        Integer getMaxPain();
+        Integer getMinMobility();
+        Integer getMaxMobility();
+        Integer getMinStrength();
+        Integer getMaxStrength();
+        LocalDate getFirstDate();
+        LocalDate getLatestDate();
+    }
+}
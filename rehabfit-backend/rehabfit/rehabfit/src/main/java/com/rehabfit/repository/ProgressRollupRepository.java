@@ -0,0 +1,73 @@
+package com.rehabfit.repository;
+
+import com.rehabfit.model.ProgressRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ProgressRollupRepository extends JpaRepository<ProgressRollup, Long> {
+
+    List<ProgressRollup> findByUserIdAndGranularityAndBucketStartGreaterThanEqualOrderByBucketStart(
+            String userId, ProgressRollup.Granularity granularity, LocalDate since);
+
+    List<ProgressRollup> findByUserIdAndGranularityOrderByBucketStart(String userId, ProgressRollup.Granularity granularity);
+
+    // Atomic add to an existing bucket; returns 0 when the bucket row does not exist yet
+    @Modifying
+    @Query("update ProgressRollup r set r.entries = r.entries + :entries, r.sumPain = r.sumPain + :pain, " +
+           "r.sumMobility = r.sumMobility + :mobility, r.sumStrength = r.sumStrength + :strength " +
+           "where r.userId = :userId and r.granularity = :granularity and r.bucketStart = :bucketStart")
+    int increment(@Param("userId") String userId, @Param("granularity") ProgressRollup.Granularity granularity,
+                  @Param("bucketStart") LocalDate bucketStart, @Param("entries") long entries,
+                  @Param("pain") long pain, @Param("mobility") long mobility, @Param("strength") long strength);
+
+    // Creates an empty bucket unless a concurrent writer already did; the bucket key is the only unique constraint a
+    // new row can hit, so no conflict target is needed (which also keeps this portable to H2 in PostgreSQL mode)
+    @Modifying
+    @Query(value = "insert into progress_rollup (user_id, granularity, bucket_start, entries, sum_pain, sum_mobility, sum_strength) " +
+                   "values (:userId, :granularity, :bucketStart, 0, 0, 0, 0) " +
+                   "on conflict do nothing",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("userId") String userId, @Param("granularity") String granularity,
+                       @Param("bucketStart") LocalDate bucketStart);
+
+    @Modifying
+    @Query("delete from ProgressRollup r where r.userId = :userId and r.entries <= 0")
+    int deleteEmpty(@Param("userId") String userId);
+
+    @Modifying
+    @Query("delete from ProgressRollup r where r.userId = :userId")
+    int deleteByUserId(@Param("userId") String userId);
+
+    // Rebuilds one granularity for a user straight from the raw rows
+    @Modifying
+    @Query(value = "insert into progress_rollup (user_id, granularity, bucket_start, entries, sum_pain, sum_mobility, sum_strength) " +
+                   "select p.user_id, :granularity, cast(date_trunc(cast(:unit as text), p.date) as date), count(*), " +
+                   "sum(p.pain_level), sum(p.mobility), sum(p.strength) " +
+                   "from progress p where p.user_id = :userId and p.date is not null " +
+                   "group by p.user_id, cast(date_trunc(cast(:unit as text), p.date) as date)",
+           nativeQuery = true)
+    int insertFromRaw(@Param("userId") String userId, @Param("granularity") String granularity, @Param("unit") String unit);
+
+    // What the rollups should contain, computed from the raw rows
+    @Query(value = "select cast(date_trunc(cast(:unit as text), p.date) as date) as \"bucketStart\", count(*) as \"entries\", " +
+                   "sum(p.pain_level) as \"sumPain\", sum(p.mobility) as \"sumMobility\", sum(p.strength) as \"sumStrength\" " +
+                   "from progress p where p.user_id = :userId and p.date is not null " +
+                   "group by cast(date_trunc(cast(:unit as text), p.date) as date)",
+           nativeQuery = true)
+    List<BucketTotals> aggregateRaw(@Param("userId") String userId, @Param("unit") String unit);
+
+    interface BucketTotals {
+        LocalDate getBucketStart();
+        long getEntries();
+        long getSumPain();
+        long getSumMobility();
+        long getSumStrength();
+    }
+}
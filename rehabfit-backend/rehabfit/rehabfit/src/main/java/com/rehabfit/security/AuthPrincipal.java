@@ -0,0 +1,9 @@
+package com.rehabfit.security;
+
+/**
+ * The authenticated caller, as read from a verified JWT. Published by
+ * {@link JWTAuthenticationFilter} as the principal of the security context.
+ * {@code userId} is null for tokens issued before the {@code uid} claim was added.
+ */
+public record AuthPrincipal(String email, String userId, long expiresAt) {
+}
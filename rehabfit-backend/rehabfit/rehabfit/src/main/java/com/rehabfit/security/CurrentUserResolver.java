@@ -0,0 +1,67 @@
+package com.rehabfit.security;
+
+import com.rehabfit.service.StageMetrics;
+import com.rehabfit.service.UserProfileCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps a request's bearer token to the caller's user id. Reuses the principal already
+ * published by {@link JWTAuthenticationFilter} when there is one, and only falls back to
+ * a (cached) profile lookup by email for older tokens without a {@code uid} claim. A
+ * {@code uid} is checked against the profile cache, so tokens of a deleted user stop working
+ * once the user's entry is invalidated or expires.
+ */
+@Component
+public class CurrentUserResolver {
+
+    @Autowired
+    private JWTUtil jwtUtil;
+
+    @Autowired
+    private UserProfileCache profileCache;
+
+    @Autowired
+    private StageMetrics metrics;
+
+    private final AtomicLong databaseLookups = new AtomicLong();
+
+    public String userId(String authHeader) {
+        return metrics.time("user", () -> resolve(authHeader));
+    }
+
+    private String resolve(String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new RuntimeException("Missing or invalid Authorization header");
+        }
+        AuthPrincipal principal = current();
+        if (principal == null) {
+            principal = jwtUtil.parse(authHeader.substring(7));
+        }
+        if (principal == null) {
+            throw new RuntimeException("Invalid token");
+        }
+        if (principal.userId() != null) {
+            // The token stays valid after the user is gone; the (usually cached) profile says whether they still exist
+            return profileCache.findById(principal.userId())
+                    .orElseThrow(() -> new RuntimeException("User not found"))
+                    .id().toString();
+        }
+        databaseLookups.incrementAndGet();
+        return profileCache.findByEmail(principal.email())
+                .orElseThrow(() -> new RuntimeException("User not found"))
+                .id().toString();
+    }
+
+    /** The principal the filter put into the security context for this request, if any. */
+    public static AuthPrincipal current() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.getPrincipal() instanceof AuthPrincipal principal ? principal : null;
+    }
+
+    public long getDatabaseLookups() { return databaseLookups.get(); }
+}
@@ -1,24 +1,39 @@
 package com.rehabfit.security;
 
+import com.rehabfit.config.RequestTimeline;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 public class JWTAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final List<SimpleGrantedAuthority> ADMIN = List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
     private final JWTUtil jwtUtil;
+    private final Set<String> adminEmails;
 
-    public JWTAuthenticationFilter(JWTUtil jwtUtil) {
+    public JWTAuthenticationFilter(JWTUtil jwtUtil, @Value("${app.admin-emails:}") String adminEmails) {
         this.jwtUtil = jwtUtil;
+        this.adminEmails = Arrays.stream(adminEmails.split(","))
+                .map(email -> email.trim().toLowerCase(Locale.ROOT))
+                .filter(email -> !email.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
     }
 
     @Override
@@ -30,11 +45,15 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
 
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7); // remove "Bearer "
-            String email = jwtUtil.validateTokenAndGetEmail(token);
+            long started = System.nanoTime();
+            AuthPrincipal principal = jwtUtil.parse(token);
+            RequestTimeline.record("auth", System.nanoTime() - started, principal != null ? "success" : "error");
 
-            if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (principal != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // Controllers read the typed principal back instead of parsing the token again
+                boolean admin = principal.email() != null && adminEmails.contains(principal.email().toLowerCase(Locale.ROOT));
                 UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(email, null, null);
+                        new UsernamePasswordAuthenticationToken(principal, null, admin ? ADMIN : null);
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
@@ -1,40 +1,107 @@
 package com.rehabfit.security;
 
+import com.rehabfit.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class JWTUtil {
 
+    static final String USER_ID_CLAIM = "uid";
+
     private final Key secretKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
 
     private final long expirationMs = 86400000; // 24 hours
 
-    public String generateToken(String email) {
-        return Jwts.builder()
+    // Parsers are immutable and thread-safe, so one is enough
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(secretKey).build();
+
+    private final int maxCachedTokens;
+
+    // Verified tokens, kept until they expire; access-ordered for LRU eviction, guarded by "this"
+    private final LinkedHashMap<String, AuthPrincipal> verified = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    public JWTUtil(@Value("${auth.token-cache.max-entries:10000}") int maxCachedTokens) {
+        this.maxCachedTokens = maxCachedTokens;
+    }
+
+    public String generateToken(User user) {
+        return generateToken(user.getEmail(), user.getId());
+    }
+
+    public String generateToken(String email, Long userId) {
+        var builder = Jwts.builder()
                 .setSubject(email)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + expirationMs))
-                .signWith(secretKey)
-                .compact();
+                .setExpiration(new Date(System.currentTimeMillis() + expirationMs));
+        if (userId != null) {
+            builder.claim(USER_ID_CLAIM, userId.toString());
+        }
+        return builder.signWith(secretKey).compact();
     }
 
     public String validateTokenAndGetEmail(String token) {
-    try {
-        return Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-    } catch (Exception e) {
-        return null; // Invalid token
+        AuthPrincipal principal = parse(token);
+        return principal == null ? null : principal.email();
+    }
+
+    /**
+     * Verifies the token and returns its principal, or null if it is invalid or expired.
+     * The signature is checked once per token; later calls are served from memory until
+     * the token's own expiry.
+     */
+    public AuthPrincipal parse(String token) {
+        if (token == null || token.isEmpty()) return null;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            AuthPrincipal cached = verified.get(token);
+            if (cached != null) {
+                if (cached.expiresAt() > now) {
+                    cacheHits.incrementAndGet();
+                    return cached;
+                }
+                verified.remove(token);
+                return null;
+            }
+        }
+        cacheMisses.incrementAndGet();
+
+        AuthPrincipal principal;
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            long expiresAt = claims.getExpiration() == null ? Long.MAX_VALUE : claims.getExpiration().getTime();
+            principal = new AuthPrincipal(claims.getSubject(), claims.get(USER_ID_CLAIM, String.class), expiresAt);
+        } catch (Exception e) {
+            return null; // Invalid token
+        }
+        if (principal.email() == null) return null;
+
+        synchronized (this) {
+            verified.put(token, principal);
+            Iterator<Map.Entry<String, AuthPrincipal>> it = verified.entrySet().iterator();
+            while (verified.size() > maxCachedTokens && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return principal;
     }
-}
 
+    public long getTokenCacheHits() { return cacheHits.get(); }
+    public long getTokenCacheMisses() { return cacheMisses.get(); }
 }
@@ -34,12 +34,17 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .cors(cors -> cors.configurationSource(corsConfigurationSource())) // 👈 plug in config
             .authorizeHttpRequests(auth -> auth
+                // Maintenance endpoints; admins are listed in app.admin-emails
+                .requestMatchers("/api/rag/index/**", "/api/progress/rollups/**").hasRole("ADMIN")
                 .requestMatchers(
                     "/auth/register",
                     "/auth/login",
                     "/auth/google",
                     "/api/rag/chat/**",
-                    "/api/rag/test-youtube"
+                    "/api/rag/test-youtube",
+                    // Only served on management.server.port, which is kept off the public network
+                    "/actuator/health",
+                    "/actuator/prometheus"
                 ).permitAll()
                 .requestMatchers(
                     "/auth/profile",
@@ -66,7 +71,8 @@ public class SecurityConfig {
             "https://*.netlify.app"
         ));
         config.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-        config.setAllowedHeaders(List.of("Authorization", "Cache-Control", "Content-Type"));
+        config.setAllowedHeaders(List.of("Authorization", "Cache-Control", "Content-Type", "If-None-Match", "X-Debug-Timing"));
+        config.setExposedHeaders(List.of("ETag", "Server-Timing", "X-Request-Timeline"));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", config);
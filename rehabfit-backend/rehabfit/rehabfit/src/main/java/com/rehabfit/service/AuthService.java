@@ -5,6 +5,7 @@ import com.rehabfit.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import com.rehabfit.security.JWTUtil;
@@ -22,12 +23,31 @@ public class AuthService {
     @Autowired
     private JWTUtil jwtUtil;
 
+    @Autowired
+    private IndexOutboxService indexOutbox;
+
+    @Autowired
+    private UserProfileCache profileCache;
+
+    @Transactional
     public User register(User user) {
         if (userRepository.findByEmail(user.getEmail()).isPresent()) {
             throw new RuntimeException("Email already registered");
         }
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        indexOutbox.enqueueProfile(saved);
+        profileCache.invalidate(saved.getId());
+        return saved;
+    }
+
+    // Saves profile changes and queues the profile for re-indexing in the same transaction
+    @Transactional
+    public User saveProfile(User user) {
+        User saved = userRepository.save(user);
+        indexOutbox.enqueueProfile(saved);
+        profileCache.invalidate(saved.getId());
+        return saved;
     }
 
     public String login(String email, String password) {
@@ -41,7 +61,7 @@ public class AuthService {
             throw new RuntimeException("Invalid password");
         }
 
-        return jwtUtil.generateToken(user.getEmail());
+        return jwtUtil.generateToken(user);
     }
 
 }
@@ -0,0 +1,72 @@
+package com.rehabfit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user cache of built dashboard responses, keyed by the user's context version
+ * (see {@link UserContextVersionService}). An entry is only returned while the version
+ * still matches, and is dropped as soon as a {@link UserDataChangedEvent} arrives.
+ */
+@Component
+public class DashboardCache {
+
+    private final int maxEntries;
+
+    // Access-ordered for LRU eviction; guarded by "this"
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public DashboardCache(@Value("${dashboard.cache.max-entries:5000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public synchronized Map<String, Object> get(String userId, String version) {
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.version.equals(version)) {
+            hits.incrementAndGet();
+            return entry.data;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public synchronized void put(String userId, String version, Map<String, Object> data) {
+        entries.put(userId, new Entry(version, data));
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized void invalidate(String userId) {
+        if (entries.remove(userId) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        invalidate(event.userId());
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getInvalidations() { return invalidations.get(); }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry(String version, Map<String, Object> data) {}
+}
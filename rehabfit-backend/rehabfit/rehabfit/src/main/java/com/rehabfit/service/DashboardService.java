@@ -0,0 +1,314 @@
+package com.rehabfit.service;
+
+import com.rehabfit.dto.UserProfile;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.model.DashboardInsight;
+import com.rehabfit.repository.DashboardInsightRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the dashboard from precomputed insight snapshots.
+ * Profile and progress changes schedule a debounced background recomputation of the LLM and
+ * video sections, so several quick writes for one user cost a single LLM call. The endpoint
+ * only builds insights inline for a user who has no snapshot yet. Partial insights are kept
+ * too, marked as such, and regenerated after {@code partial-retry-ms}.
+ */
+@Service
+public class DashboardService {
+    private static final Logger log = LoggerFactory.getLogger(DashboardService.class);
+
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private UserProfileCache profiles;
+
+    @Autowired
+    private DashboardInsightRepository insightRepository;
+
+    @Autowired
+    private UserContextVersionService userContextVersionService;
+
+    @Autowired
+    private DashboardCache dashboardCache;
+
+    @Autowired
+    private ProgressService progressService;
+
+    @Autowired
+    private ProgressRollupService progressRollups;
+
+    @Value("${dashboard.progress.window:30}")
+    private int progressWindow;
+
+    @Value("${dashboard.progress.weeks:12}")
+    private int progressWeeks;
+
+    @Value("${dashboard.insights.debounce-ms:5000}")
+    private long debounceMs;
+
+    @Value("${dashboard.insights.workers:2}")
+    private int workers;
+
+    @Value("${dashboard.insights.history:5}")
+    private int history;
+
+    @Value("${dashboard.insights.partial-retry-ms:600000}")
+    private long partialRetryMs;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, PendingRecompute> pending = new ConcurrentHashMap<>();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong recomputations = new AtomicLong();
+    private final AtomicLong debounced = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(workers, r -> {
+            Thread t = new Thread(r, "dashboard-insights-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Version of the dashboard a user would get right now: their context version, the latest
+     * snapshot, and whether a newer snapshot is on its way. Used as the dashboard ETag.
+     */
+    public DashboardVersion currentVersion(String userId) {
+        String contextVersion = userContextVersionService.versionFor(userId);
+        Long snapshotVersion = insightRepository.findLatestSnapshotVersion(userId);
+        return new DashboardVersion(contextVersion, snapshotVersion == null ? 0 : snapshotVersion, isRefreshing(userId));
+    }
+
+    public Map<String, Object> getDashboard(String userId, DashboardVersion version) {
+        UserProfile user = profiles.findById(userId).orElse(null);
+        String createdAt = (user != null && user.createdAt() != null) ? user.createdAt().toString() : "";
+        // Only the recent entries travel with the dashboard; older ones are summarized by the database
+        List<Map<String, Object>> progressData = progressService.recent(userId, progressWindow);
+        ProgressRollupService.Totals totals = progressRollups.totals(userId);
+
+        Map<String, Object> insights;
+        DashboardInsight snapshot = insightRepository.findTopByUserIdOrderBySnapshotVersionDesc(userId).orElse(null);
+        if (snapshot == null) {
+            // First visit: nothing precomputed yet, so build inline and keep the result, even a
+            // partial one, so the next visit doesn't pay for another LLM call
+            insights = ragService.buildDashboardInsights(userId);
+            persist(userId, version.contextVersion(), insights);
+        } else {
+            insights = fromSnapshot(snapshot);
+            if (!version.contextVersion().equals(snapshot.getInputsVersion())) {
+                // Inputs changed without us hearing about it (another node, a restart); catch up,
+                // but leave an already scheduled run alone so frequent reloads can't keep delaying it
+                scheduleRecomputeIfIdle(userId);
+            } else if (isRetryDue(snapshot)) {
+                scheduleRecomputeIfIdle(userId);
+            }
+            insights.put("insightsGeneratedAt", snapshot.getCreatedAt() != null ? snapshot.getCreatedAt().toString() : "");
+        }
+
+        Map<String, Object> result = new HashMap<>(insights);
+        result.put("createdAt", createdAt);
+        result.put("progressData", progressData);
+        result.put("progressStats", totals);
+        result.put("weeklyProgress", progressService.weekly(userId, progressWeeks));
+        result.put("recoveryPercentage", calculateRecoveryPercentage(totals));
+        result.put("refreshing", isRefreshing(userId));
+        result.putIfAbsent("partial", false);
+        result.putIfAbsent("degradedStages", List.of());
+        return result;
+    }
+
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        scheduleRecompute(event.userId());
+    }
+
+    /** (Re)starts the debounce timer for a user's recomputation. */
+    public void scheduleRecompute(String userId) {
+        pending.compute(userId, (id, previous) -> {
+            if (previous != null && previous.future.cancel(false)) {
+                debounced.incrementAndGet();
+            }
+            return newRecompute(id);
+        });
+    }
+
+    /** Schedules a recomputation unless one is already waiting or running for the user. */
+    private void scheduleRecomputeIfIdle(String userId) {
+        if (running.contains(userId)) return;
+        pending.computeIfAbsent(userId, this::newRecompute);
+    }
+
+    private PendingRecompute newRecompute(String userId) {
+        PendingRecompute task = new PendingRecompute(userId);
+        task.future = scheduler.schedule(task, debounceMs, TimeUnit.MILLISECONDS);
+        return task;
+    }
+
+    public boolean isRefreshing(String userId) {
+        return pending.containsKey(userId) || running.contains(userId);
+    }
+
+    public long getRecomputations() { return recomputations.get(); }
+    public long getDebounced() { return debounced.get(); }
+    public int getPendingCount() { return pending.size(); }
+
+    private void recompute(String userId, PendingRecompute task) {
+        if (!running.add(userId)) {
+            // Previous run for this user still in progress; try again after it
+            scheduleRecompute(userId);
+            return;
+        }
+        // Only our own entry: a change that arrived meanwhile has scheduled a newer one, which must stay
+        pending.remove(userId, task);
+        try {
+            String contextVersion = userContextVersionService.versionFor(userId);
+            Map<String, Object> insights = ragService.buildDashboardInsights(userId);
+            if (Boolean.TRUE.equals(insights.get("partial"))) {
+                log.warn("Partial dashboard insights for user {}: {}; retrying in {} ms at the earliest",
+                        userId, insights.get("degradedStages"), partialRetryMs);
+            }
+            persist(userId, contextVersion, insights);
+            recomputations.incrementAndGet();
+        } catch (Exception e) {
+            log.error("Dashboard insight recomputation failed for user {}", userId, e);
+        } finally {
+            running.remove(userId);
+            dashboardCache.invalidate(userId);
+        }
+    }
+
+    private synchronized void persist(String userId, String contextVersion, Map<String, Object> insights) {
+        long next;
+        try {
+            next = saveSnapshot(userId, contextVersion, insights);
+        } catch (DataIntegrityViolationException e) {
+            // Another node took this version between our read and our insert; go after it
+            log.debug("Dashboard snapshot version clash for user {}, retrying", userId);
+            next = saveSnapshot(userId, contextVersion, insights);
+        }
+
+        if (next > history) {
+            insightRepository.deleteOlderThan(userId, next - history + 1);
+        }
+    }
+
+    private long saveSnapshot(String userId, String contextVersion, Map<String, Object> insights) {
+        Long latest = insightRepository.findLatestSnapshotVersion(userId);
+        long next = latest == null ? 1 : latest + 1;
+
+        DashboardInsight snapshot = new DashboardInsight();
+        snapshot.setUserId(userId);
+        snapshot.setSnapshotVersion(next);
+        snapshot.setInputsVersion(contextVersion);
+        snapshot.setEstimatedRecovery(String.valueOf(insights.getOrDefault("estimatedRecovery", "N/A")));
+        snapshot.setDietPlanJson(toJson(insights.getOrDefault("dietPlan", List.of())));
+        snapshot.setLlmSummaryJson(toJson(insights.getOrDefault("llmSummary", List.of())));
+        snapshot.setVideosJson(toJson(insights.getOrDefault("videos", List.of())));
+        if (Boolean.TRUE.equals(insights.get("partial")) && insights.get("degradedStages") instanceof List<?> stages) {
+            snapshot.setPartial(true);
+            snapshot.setDegradedStages(String.join(",", stages.stream().map(String::valueOf).toList()));
+        }
+        insightRepository.save(snapshot);
+        return next;
+    }
+
+    private Map<String, Object> fromSnapshot(DashboardInsight snapshot) {
+        Map<String, Object> insights = new HashMap<>();
+        insights.put("estimatedRecovery", snapshot.getEstimatedRecovery());
+        insights.put("dietPlan", fromJson(snapshot.getDietPlanJson()));
+        insights.put("llmSummary", fromJson(snapshot.getLlmSummaryJson()));
+        insights.put("videos", fromJson(snapshot.getVideosJson()));
+        if (Boolean.TRUE.equals(snapshot.getPartial())) {
+            insights.put("partial", true);
+            String stages = snapshot.getDegradedStages();
+            insights.put("degradedStages", stages == null || stages.isEmpty() ? List.of() : List.of(stages.split(",")));
+        }
+        return insights;
+    }
+
+    // A partial snapshot is regenerated once it is old enough, so a degraded upstream costs one
+    // LLM call per backoff period rather than one per dashboard load
+    private boolean isRetryDue(DashboardInsight snapshot) {
+        return Boolean.TRUE.equals(snapshot.getPartial()) && snapshot.getCreatedAt() != null
+                && snapshot.getCreatedAt().isBefore(LocalDateTime.now().minus(Duration.ofMillis(partialRetryMs)));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize dashboard insight", e);
+        }
+    }
+
+    private List<?> fromJson(String json) {
+        if (json == null || json.isBlank()) return List.of();
+        try {
+            return mapper.readValue(json, List.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Unreadable dashboard insight JSON: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    // Average mobility over the whole log, as a percentage of the 0-10 scale
+    private int calculateRecoveryPercentage(ProgressRollupService.Totals totals) {
+        if (totals.entries() == 0 || totals.avgMobility() == null) return 0;
+        return (int) Math.round((totals.avgMobility() / 10.0) * 100);
+    }
+
+    // A scheduled recomputation; recompute() removes it from pending only if it is still the current one
+    private final class PendingRecompute implements Runnable {
+        private final String userId;
+        // Set right after scheduling, while the task may already be running on another thread
+        private volatile ScheduledFuture<?> future;
+
+        PendingRecompute(String userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public void run() {
+            recompute(userId, this);
+        }
+    }
+
+    public record DashboardVersion(String contextVersion, long snapshotVersion, boolean refreshing) {
+        public String etag() {
+            return "\"" + contextVersion + "-" + snapshotVersion + (refreshing ? "-r" : "") + "\"";
+        }
+    }
+}
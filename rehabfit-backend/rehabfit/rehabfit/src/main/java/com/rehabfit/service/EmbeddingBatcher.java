@@ -0,0 +1,198 @@
+package com.rehabfit.service;
+
+import com.rehabfit.config.Upstream;
+import com.rehabfit.config.UpstreamClientRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent embedding requests into batched calls to the embedding service.
+ * Requests are collected for up to {@code linger-ms} or {@code max-size} items, whichever
+ * comes first, sent to {@code /embed/batch}, and the vectors are handed back through futures.
+ * Against an older embedding service without that route (404), it falls back to one
+ * {@code /embed} call per text for good.
+ */
+@Component
+public class EmbeddingBatcher {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingBatcher.class);
+
+    @Autowired
+    private UpstreamClientRegistry upstreamClients;
+
+    @Value("${embedding.service.url:http://localhost:5005}")
+    private String embeddingServiceUrl;
+
+    @Value("${embedding.batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${embedding.batch.max-size:32}")
+    private int maxBatchSize;
+
+    @Value("${embedding.batch.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${embedding.batch.max-in-flight:4}")
+    private int maxInFlight;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong textsSent = new AtomicLong();
+
+    private ThreadPoolExecutor senders;
+    private Thread collector;
+    private volatile boolean running;
+    private volatile boolean batchRouteAvailable = true;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        // Caller-runs keeps the collector from racing ahead of the embedding service
+        senders = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxInFlight), r -> {
+                    Thread t = new Thread(r, "embedding-batch-sender");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        running = true;
+        collector = new Thread(this::collectLoop, "embedding-batch-collector");
+        collector.setDaemon(true);
+        collector.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (collector != null) collector.interrupt();
+        if (senders != null) senders.shutdown();
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.future.completeExceptionally(new IllegalStateException("Embedding batcher stopped"));
+        }
+    }
+
+    /**
+     * Queues a text for embedding. When batching is disabled this falls back to a single
+     * {@code /embed} call on the caller's thread.
+     */
+    public CompletableFuture<float[]> submit(String text) {
+        if (!enabled || !running || !batchRouteAvailable) {
+            try {
+                return CompletableFuture.completedFuture(embedSingle(text));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        Pending pending = new Pending(text, new CompletableFuture<>());
+        queue.add(pending);
+        return pending.future;
+    }
+
+    public long getBatchesSent() { return batchesSent.get(); }
+    public long getTextsSent() { return textsSent.get(); }
+    public int getQueueDepth() { return queue.size(); }
+
+    private void collectLoop() {
+        while (running) {
+            try {
+                Pending first = queue.take();
+                List<Pending> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                senders.execute(() -> send(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Embedding batch collector error", e);
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        if (!batchRouteAvailable) {
+            sendIndividually(batch);
+            return;
+        }
+        try {
+            List<String> texts = new ArrayList<>(batch.size());
+            for (Pending p : batch) texts.add(p.text);
+
+            RestTemplate restTemplate = upstreamClients.restTemplate(Upstream.EMBEDDING);
+            ResponseEntity<Map> response = restTemplate.postForEntity(
+                    embeddingServiceUrl + "/embed/batch", Map.of("texts", texts), Map.class);
+            List<List<Number>> embeddings = (List<List<Number>>) response.getBody().get("embeddings");
+            if (embeddings == null || embeddings.size() != batch.size()) {
+                throw new IllegalStateException("Embedding service returned "
+                        + (embeddings == null ? 0 : embeddings.size()) + " vectors for " + batch.size() + " texts");
+            }
+            batchesSent.incrementAndGet();
+            textsSent.addAndGet(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(toFloatArray(embeddings.get(i)));
+            }
+        } catch (HttpClientErrorException.NotFound e) {
+            if (batchRouteAvailable) {
+                batchRouteAvailable = false;
+                log.warn("Embedding service has no /embed/batch route; embedding one text per call from now on");
+            }
+            sendIndividually(batch);
+        } catch (Exception e) {
+            for (Pending p : batch) p.future.completeExceptionally(e);
+        }
+    }
+
+    private void sendIndividually(List<Pending> batch) {
+        for (Pending p : batch) {
+            try {
+                p.future.complete(embedSingle(p.text));
+            } catch (Exception e) {
+                p.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private float[] embedSingle(String text) {
+        RestTemplate restTemplate = upstreamClients.restTemplate(Upstream.EMBEDDING);
+        ResponseEntity<Map> response = restTemplate.postForEntity(
+                embeddingServiceUrl + "/embed", Map.of("text", text), Map.class);
+        textsSent.incrementAndGet();
+        return toFloatArray((List<Number>) response.getBody().get("embedding"));
+    }
+
+    private static float[] toFloatArray(List<Number> values) {
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) vector[i] = values.get(i).floatValue();
+        return vector;
+    }
+
+    private record Pending(String text, CompletableFuture<float[]> future) {}
+}
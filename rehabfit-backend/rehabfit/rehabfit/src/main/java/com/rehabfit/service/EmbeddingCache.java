@@ -0,0 +1,135 @@
+package com.rehabfit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Size-bounded, TTL-aware cache of text embeddings.
+ * Keys are a SHA-256 of the normalized text, values are primitive float vectors.
+ * Concurrent callers asking for the same text share a single in-flight load.
+ * Returned arrays are shared between callers and must not be modified.
+ */
+@Component
+public class EmbeddingCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Access-ordered map gives us LRU eviction; guarded by "this"
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EmbeddingCache(@Value("${embedding.cache.max-entries:10000}") int maxEntries,
+                          @Value("${embedding.cache.ttl-minutes:1440}") long ttlMinutes) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMinutes * 60_000L;
+    }
+
+    /**
+     * Returns the cached embedding for the text, or starts a load with the given loader.
+     * Callers for the same key share the in-flight future until it completes.
+     * Failed loads are not cached; the error is propagated to every waiting caller.
+     */
+    public CompletableFuture<float[]> getAsync(String text, Function<String, CompletableFuture<float[]>> loader) {
+        String key = keyFor(text);
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<float[]> created = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            // Someone else is already loading this text; count it as a hit on the shared request
+            hits.incrementAndGet();
+            return existing;
+        }
+
+        misses.incrementAndGet();
+        CompletableFuture<float[]> load;
+        try {
+            load = loader.apply(text);
+        } catch (RuntimeException e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((vector, error) -> {
+            if (error == null && vector != null) {
+                store(key, vector);
+            }
+            inFlight.remove(key, created);
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(vector);
+            }
+        });
+        return created;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized float[] lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry.vector;
+    }
+
+    private synchronized void store(String key, float[] vector) {
+        entries.put(key, new Entry(vector, System.currentTimeMillis() + ttlMillis));
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Collapse whitespace so "knee  pain " and "knee pain" share an entry
+    static String normalize(String text) {
+        if (text == null) return "";
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    static String keyFor(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalize(text).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Entry(float[] vector, long expiresAt) {}
+}
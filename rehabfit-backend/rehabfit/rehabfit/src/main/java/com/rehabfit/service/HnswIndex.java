@@ -0,0 +1,190 @@
+package com.rehabfit.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph over unit-length vectors, scored by dot product
+ * (cosine similarity for normalized input). Nodes are numbered in insertion order. Removal is
+ * left to the caller: pass a predicate to {@link #search} and rebuild once enough nodes are dead.
+ * Not thread-safe; callers guard it with their own lock.
+ */
+final class HnswIndex {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+
+    private final List<float[]> vectors = new ArrayList<>();
+    // links.get(node)[level] holds the node's neighbours on that level
+    private final List<int[][]> links = new ArrayList<>();
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int m, int efConstruction, long seed) {
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    int size() {
+        return vectors.size();
+    }
+
+    /** Adds a vector and returns its node number. */
+    int add(float[] vector) {
+        int node = vectors.size();
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) nodeLinks[l] = new int[0];
+        vectors.add(vector);
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Scored> candidates = searchLayer(vector, current, efConstruction, l);
+            int[] neighbours = closest(candidates, m);
+            nodeLinks[l] = neighbours;
+            int maxLinks = l == 0 ? maxM0 : m;
+            for (int neighbour : neighbours) {
+                connect(neighbour, node, l, maxLinks);
+            }
+            current = candidates.get(0).node;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * Returns up to {@code k} accepted nodes closest to {@code query}, best first. Rejected nodes
+     * are still walked through, so a heavily filtered search can come back short.
+     */
+    List<Scored> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0) return List.of();
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        List<Scored> candidates = searchLayer(query, current, Math.max(ef, k), 0);
+        List<Scored> results = new ArrayList<>(k);
+        for (Scored candidate : candidates) {
+            if (accept.test(candidate.node)) {
+                results.add(candidate);
+                if (results.size() == k) break;
+            }
+        }
+        return results;
+    }
+
+    static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = dot(query, vectors.get(current));
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : linksAt(current, level)) {
+                float score = dot(query, vectors.get(neighbour));
+                if (score > best) {
+                    best = score;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Best-first search on one level; returns up to ef nodes sorted best first
+    private List<Scored> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(vectors.size());
+        PriorityQueue<Scored> toVisit = new PriorityQueue<>(Comparator.comparingDouble((Scored s) -> s.score).reversed());
+        PriorityQueue<Scored> found = new PriorityQueue<>(Comparator.comparingDouble((Scored s) -> s.score));
+
+        Scored first = new Scored(start, dot(query, vectors.get(start)));
+        visited.set(start);
+        toVisit.add(first);
+        found.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Scored next = toVisit.poll();
+            if (found.size() >= ef && next.score < found.peek().score) break;
+            for (int neighbour : linksAt(next.node, level)) {
+                if (visited.get(neighbour)) continue;
+                visited.set(neighbour);
+                float score = dot(query, vectors.get(neighbour));
+                if (found.size() < ef || score > found.peek().score) {
+                    Scored scored = new Scored(neighbour, score);
+                    toVisit.add(scored);
+                    found.add(scored);
+                    if (found.size() > ef) found.poll();
+                }
+            }
+        }
+
+        List<Scored> sorted = new ArrayList<>(found);
+        sorted.sort(Comparator.comparingDouble((Scored s) -> s.score).reversed());
+        return sorted;
+    }
+
+    private void connect(int node, int neighbour, int level, int maxLinks) {
+        int[] existing = links.get(node)[level];
+        int[] grown = new int[existing.length + 1];
+        System.arraycopy(existing, 0, grown, 0, existing.length);
+        grown[existing.length] = neighbour;
+        if (grown.length > maxLinks) {
+            // Keep the closest neighbours of this node
+            float[] base = vectors.get(node);
+            List<Scored> scored = new ArrayList<>(grown.length);
+            for (int candidate : grown) {
+                scored.add(new Scored(candidate, dot(base, vectors.get(candidate))));
+            }
+            scored.sort(Comparator.comparingDouble((Scored s) -> s.score).reversed());
+            grown = closest(scored, maxLinks);
+        }
+        links.get(node)[level] = grown;
+    }
+
+    private int[] linksAt(int node, int level) {
+        int[][] nodeLinks = links.get(node);
+        return level < nodeLinks.length ? nodeLinks[level] : new int[0];
+    }
+
+    private static int[] closest(List<Scored> sortedBestFirst, int limit) {
+        int n = Math.min(limit, sortedBestFirst.size());
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = sortedBestFirst.get(i).node;
+        return result;
+    }
+
+    record Scored(int node, float score) {}
+}
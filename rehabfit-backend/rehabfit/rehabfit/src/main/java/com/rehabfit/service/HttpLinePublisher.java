@@ -0,0 +1,123 @@
+package com.rehabfit.service;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a request with the JDK's non-blocking client and publishes the response body line by
+ * line. Demand from the subscriber is passed straight through to the socket read, so a slow
+ * consumer slows down the upstream instead of buffering it. Non-2xx responses end in an error.
+ * Each subscription sends the request again.
+ */
+final class HttpLinePublisher implements Publisher<String> {
+
+    private final HttpClient client;
+    private final HttpRequest request;
+
+    HttpLinePublisher(HttpClient client, HttpRequest request) {
+        this.client = client;
+        this.request = request;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        Bridge bridge = new Bridge(subscriber);
+        subscriber.onSubscribe(bridge);
+        if (bridge.cancelled.get()) return;
+        HttpResponse.BodyHandler<Void> handler = info -> {
+            if (info.statusCode() / 100 == 2) {
+                return HttpResponse.BodySubscribers.fromLineSubscriber(bridge);
+            }
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+                bridge.fail(new IOException("HTTP " + info.statusCode() + " from " + request.uri().getHost() + ": " + body));
+                return null;
+            });
+        };
+        client.sendAsync(request, handler).whenComplete((response, error) -> {
+            if (error != null) bridge.fail(error);
+        });
+    }
+
+    // Adapts the JDK's Flow line subscriber to a Reactive Streams subscriber
+    private static final class Bridge implements Flow.Subscriber<String>, Subscription {
+        private final Subscriber<? super String> downstream;
+        private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+        private final AtomicLong pendingDemand = new AtomicLong();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        Bridge(Subscriber<? super String> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (!upstream.compareAndSet(null, subscription) || cancelled.get()) {
+                subscription.cancel();
+                return;
+            }
+            // Forward whatever was requested before the response arrived
+            long demand = pendingDemand.getAndSet(0);
+            if (demand > 0) subscription.request(demand);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!terminated.get()) downstream.onNext(line);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            fail(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (terminated.compareAndSet(false, true)) downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Demand must be positive, got " + n));
+                return;
+            }
+            Flow.Subscription s = upstream.get();
+            if (s != null) {
+                s.request(n);
+            } else {
+                pendingDemand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                // The response may have arrived in between
+                s = upstream.get();
+                if (s != null) {
+                    long demand = pendingDemand.getAndSet(0);
+                    if (demand > 0) s.request(demand);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                terminated.set(true);
+                Flow.Subscription s = upstream.get();
+                if (s != null) s.cancel();
+            }
+        }
+
+        void fail(Throwable error) {
+            if (terminated.compareAndSet(false, true)) downstream.onError(error);
+        }
+    }
+}
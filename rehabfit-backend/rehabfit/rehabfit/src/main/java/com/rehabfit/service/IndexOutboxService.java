@@ -0,0 +1,165 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.model.IndexFingerprint;
+import com.rehabfit.model.IndexOutbox;
+import com.rehabfit.model.Progress;
+import com.rehabfit.model.User;
+import com.rehabfit.repository.IndexFingerprintRepository;
+import com.rehabfit.repository.IndexOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records documents to be indexed for RAG. Enqueueing joins the caller's transaction, so the
+ * outbox row commits or rolls back together with the entity change; {@link IndexOutboxWorker}
+ * does the embedding and vector store writes afterwards.
+ * Documents whose content fingerprint matches what is already indexed are not enqueued at all.
+ */
+@Service
+public class IndexOutboxService {
+
+    @Autowired
+    private IndexOutboxRepository outboxRepository;
+
+    @Autowired
+    private IndexFingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${embedding.model-version:all-MiniLM-L6-v2}")
+    private String modelVersion;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong skippedUnchanged = new AtomicLong();
+
+    @Transactional
+    public void enqueue(String userId, String docId, String text, Map<String, Object> metadata) {
+        enqueue(new Document(userId, docId, text, metadata == null ? Map.of() : metadata));
+    }
+
+    @Transactional
+    public void enqueue(Document document) {
+        String metadataJson = toJson(document.metadata());
+        if (isIndexed(document.userId(), document.docId(), fingerprint(document.text(), metadataJson))
+                && !outboxRepository.existsByUserIdAndDocIdAndDeadLetterFalse(document.userId(), document.docId())) {
+            // Already indexed with this exact content, and no other version is waiting to overwrite it
+            skippedUnchanged.incrementAndGet();
+            return;
+        }
+        IndexOutbox entry = new IndexOutbox();
+        entry.setUserId(document.userId());
+        entry.setDocId(document.docId());
+        entry.setText(document.text());
+        entry.setMetadataJson(metadataJson);
+        Instant now = Instant.now();
+        entry.setCreatedAt(now);
+        entry.setNextAttemptAt(now);
+        outboxRepository.save(entry);
+    }
+
+    /**
+     * Enqueues documents that cannot have been indexed before (rows that were just inserted),
+     * so the per-document fingerprint and pending checks are skipped. Written with one JDBC
+     * batch; for bulk paths.
+     */
+    @Transactional
+    public void enqueueNew(List<Document> documents) {
+        if (documents.isEmpty()) return;
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(
+            "insert into index_outbox (user_id, doc_id, text, metadata_json, attempts, next_attempt_at, created_at, dead_letter) " +
+            "values (?, ?, ?, ?, 0, ?, ?, false)",
+            documents, documents.size(), (ps, document) -> {
+                ps.setString(1, document.userId());
+                ps.setString(2, document.docId());
+                ps.setString(3, document.text());
+                ps.setString(4, toJson(document.metadata()));
+                ps.setTimestamp(5, now);
+                ps.setTimestamp(6, now);
+            });
+    }
+
+    @Transactional
+    public void enqueueProfile(User user) {
+        enqueue(profileDocument(user));
+    }
+
+    @Transactional
+    public void enqueueProgress(Progress progress) {
+        enqueue(progressDocument(progress));
+    }
+
+    // The user's name and goals, for personalization
+    public Document profileDocument(User user) {
+        String userId = user.getId().toString();
+        String text = "Name: " + user.getName() + ". Injury Type: " + user.getInjuryType() + ". Fitness Goal: " + user.getFitnessGoal() + ".";
+        return new Document(userId, "user-profile-" + userId, text, Map.of("type", "profile"));
+    }
+
+    public Document progressDocument(Progress progress) {
+        String userId = progress.getUserId();
+        String text = "Date: " + progress.getDate() + ", Pain: " + progress.getPainLevel() +
+                      ", Mobility: " + progress.getMobility() + ", Strength: " + progress.getStrength();
+        return new Document(userId, "progress-" + userId + "-" + progress.getId(), text,
+            Map.of("type", "progress", "date", String.valueOf(progress.getDate())));
+    }
+
+    /** True when the vector store holds exactly this content for the document, embedded by the current model. */
+    public boolean isIndexed(String userId, String docId, String contentHash) {
+        return fingerprintRepository.findByUserIdAndDocId(userId, docId)
+            .map(f -> matches(f, contentHash))
+            .orElse(false);
+    }
+
+    public boolean matches(IndexFingerprint fingerprint, String contentHash) {
+        return contentHash.equals(fingerprint.getContentHash()) && modelVersion.equals(fingerprint.getModelVersion());
+    }
+
+    public String fingerprint(Document document) {
+        return fingerprint(document.text(), toJson(document.metadata()));
+    }
+
+    // Hash over the indexed text and its canonical metadata JSON
+    public static String fingerprint(String text, String metadataJson) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(metadataJson).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public String getModelVersion() { return modelVersion; }
+    public long getSkippedUnchanged() { return skippedUnchanged.get(); }
+
+    // Sorted keys, so equal metadata always serializes (and hashes) the same way
+    private String toJson(Map<String, Object> metadata) {
+        try {
+            return mapper.writeValueAsString(new TreeMap<>(metadata));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Metadata is not serializable", e);
+        }
+    }
+
+    public record Document(String userId, String docId, String text, Map<String, Object> metadata) {}
+}
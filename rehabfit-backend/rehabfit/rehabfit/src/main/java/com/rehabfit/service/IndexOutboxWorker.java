@@ -0,0 +1,256 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.model.IndexFingerprint;
+import com.rehabfit.model.IndexOutbox;
+import com.rehabfit.repository.IndexFingerprintRepository;
+import com.rehabfit.repository.IndexOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the index outbox: claims a batch of due rows, embeds their texts in one go, writes the
+ * vectors in one upsert, records their content fingerprints and deletes the rows. Rows whose
+ * fingerprint matches what is already indexed are dropped without embedding, and rows that have
+ * a newer row for the same document are deleted unindexed, so stale content can't overwrite a
+ * newer vector. Failed rows are retried with exponential backoff and dead-lettered after
+ * {@code indexing.outbox.max-attempts}.
+ * <p>
+ * Claiming is a short transaction that locks due rows with SKIP LOCKED and leases them for
+ * {@code indexing.outbox.lease-ms}, so other instances leave them, and every other row of the
+ * same document, alone. The embedding and vector store calls run outside any transaction, and a
+ * second short transaction records the outcome. Rows of a worker that dies mid-batch become due
+ * again once the lease ends.
+ */
+@Service
+@ConditionalOnProperty(name = "indexing.outbox.worker-enabled", havingValue = "true", matchIfMissing = true)
+public class IndexOutboxWorker {
+    private static final Logger log = LoggerFactory.getLogger(IndexOutboxWorker.class);
+
+    @Autowired
+    private IndexOutboxRepository outboxRepository;
+
+    @Autowired
+    private IndexFingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private IndexOutboxService indexOutbox;
+
+    @Autowired
+    private RagService ragService;
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StageMetrics metrics;
+
+    @Value("${indexing.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${indexing.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${indexing.outbox.backoff-base-ms:2000}")
+    private long backoffBaseMs;
+
+    @Value("${indexing.outbox.backoff-max-ms:600000}")
+    private long backoffMaxMs;
+
+    @Value("${indexing.outbox.lease-ms:120000}")
+    private long leaseMs;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Scheduled(fixedDelayString = "${indexing.outbox.poll-ms:1000}")
+    public void drain() {
+        int taken;
+        do {
+            taken = drainBatch();
+        } while (taken == batchSize);
+    }
+
+    public long getIndexed() { return indexed.get(); }
+    public long getSuperseded() { return superseded.get(); }
+    public long getUnchanged() { return unchanged.get(); }
+    public long getFailures() { return failures.get(); }
+
+    public long getQueueDepth() {
+        return outboxRepository.countByDeadLetterFalse();
+    }
+
+    public long getDeadLettered() {
+        return outboxRepository.countByDeadLetterTrue();
+    }
+
+    /** Age of the oldest entry still waiting to be indexed, or 0 when the outbox is empty. */
+    public long getLagMillis() {
+        Instant oldest = outboxRepository.findOldestPendingCreatedAt();
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, Instant.now()).toMillis());
+    }
+
+    private int drainBatch() {
+        List<IndexOutbox> batch = transactionTemplate.execute(status -> claimBatch());
+        if (batch == null || batch.isEmpty()) return 0;
+
+        List<IndexOutbox> done = new ArrayList<>();
+        Set<String> docIds = new HashSet<>();
+        for (IndexOutbox entry : batch) docIds.add(entry.getDocId());
+
+        // Skip documents the vector store already holds with identical content
+        Map<String, IndexFingerprint> fingerprints = new HashMap<>();
+        for (IndexFingerprint f : fingerprintRepository.findByDocIdIn(docIds)) {
+            fingerprints.put(f.getUserId() + "|" + f.getDocId(), f);
+        }
+        List<IndexOutbox> work = new ArrayList<>();
+        for (IndexOutbox entry : batch) {
+            IndexFingerprint existing = fingerprints.get(entry.getUserId() + "|" + entry.getDocId());
+            if (existing != null && indexOutbox.matches(existing, hashOf(entry))) {
+                done.add(entry);
+                unchanged.incrementAndGet();
+            } else {
+                work.add(entry);
+            }
+        }
+
+        List<IndexOutbox> embedded = new ArrayList<>();
+        Map<Long, String> failed = new HashMap<>();
+        if (!work.isEmpty()) {
+            List<float[]> vectors = ragService.getHuggingFaceEmbeddings(work.stream().map(IndexOutbox::getText).toList());
+
+            List<VectorStore.VectorEntry> entries = new ArrayList<>();
+            for (int i = 0; i < work.size(); i++) {
+                IndexOutbox entry = work.get(i);
+                if (isZero(vectors.get(i))) {
+                    // Embedding service answered with the zero fallback; try again later
+                    failed.put(entry.getId(), "embedding service unavailable");
+                    continue;
+                }
+                entries.add(new VectorStore.VectorEntry(entry.getUserId(), entry.getDocId(), vectors.get(i), metadataOf(entry)));
+                embedded.add(entry);
+            }
+
+            if (!entries.isEmpty()) {
+                try {
+                    metrics.time("vector.upsert", () -> {
+                        vectorStore.upsertAll(entries);
+                        return null;
+                    });
+                    done.addAll(embedded);
+                    indexed.addAndGet(embedded.size());
+                } catch (Exception e) {
+                    log.warn("Vector upsert of {} outbox entries failed: {}", entries.size(), e.getMessage());
+                    embedded.forEach(entry -> failed.put(entry.getId(), e.getMessage()));
+                    embedded.clear();
+                }
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!embedded.isEmpty()) recordFingerprints(embedded, fingerprints);
+            // Reloaded so the new attempt counts are flushed on commit
+            for (IndexOutbox entry : outboxRepository.findAllById(failed.keySet())) {
+                fail(entry, failed.get(entry.getId()));
+            }
+            outboxRepository.deleteAllByIdInBatch(done.stream().map(IndexOutbox::getId).toList());
+        });
+        return batch.size();
+    }
+
+    // Drops superseded rows, then locks due rows and leases them to this worker by moving their next attempt past the lease
+    private List<IndexOutbox> claimBatch() {
+        Instant now = Instant.now();
+        superseded.addAndGet(outboxRepository.deleteSuperseded(now));
+        List<IndexOutbox> batch = outboxRepository.lockDueBatch(now, PageRequest.of(0, batchSize));
+        Instant leasedUntil = now.plusMillis(leaseMs);
+        for (IndexOutbox entry : batch) {
+            entry.setNextAttemptAt(leasedUntil);
+            entry.setLeasedUntil(leasedUntil);
+        }
+        return batch;
+    }
+
+    private void recordFingerprints(List<IndexOutbox> entries, Map<String, IndexFingerprint> existing) {
+        Instant now = Instant.now();
+        List<IndexFingerprint> updated = new ArrayList<>(entries.size());
+        for (IndexOutbox entry : entries) {
+            IndexFingerprint f = existing.get(entry.getUserId() + "|" + entry.getDocId());
+            if (f == null) {
+                f = new IndexFingerprint();
+                f.setUserId(entry.getUserId());
+                f.setDocId(entry.getDocId());
+            }
+            Object type = metadataOf(entry).get("type");
+            f.setDocType(type == null ? null : type.toString());
+            f.setContentHash(hashOf(entry));
+            f.setModelVersion(indexOutbox.getModelVersion());
+            f.setIndexedAt(now);
+            updated.add(f);
+        }
+        fingerprintRepository.saveAll(updated);
+    }
+
+    private static String hashOf(IndexOutbox entry) {
+        return IndexOutboxService.fingerprint(entry.getText(), entry.getMetadataJson());
+    }
+
+    private void fail(IndexOutbox entry, String reason) {
+        failures.incrementAndGet();
+        entry.setLeasedUntil(null);
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts);
+        entry.setLastError(reason == null ? null : reason.substring(0, Math.min(reason.length(), 1000)));
+        if (attempts >= maxAttempts) {
+            entry.setDeadLetter(true);
+            log.error("Giving up on indexing {} for user {} after {} attempts: {}", entry.getDocId(), entry.getUserId(), attempts, reason);
+            return;
+        }
+        long delay = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 20));
+        entry.setNextAttemptAt(Instant.now().plusMillis(delay));
+    }
+
+    private Map<String, Object> metadataOf(IndexOutbox entry) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (entry.getMetadataJson() != null) {
+            try {
+                metadata.putAll(mapper.readValue(entry.getMetadataJson(), new TypeReference<Map<String, Object>>() {}));
+            } catch (Exception e) {
+                log.warn("Ignoring unreadable metadata on outbox entry {}: {}", entry.getId(), e.getMessage());
+            }
+        }
+        metadata.put("text", entry.getText());
+        return metadata;
+    }
+
+    private static boolean isZero(float[] vector) {
+        for (float f : vector) {
+            if (f != 0.0f) return false;
+        }
+        return true;
+    }
+}
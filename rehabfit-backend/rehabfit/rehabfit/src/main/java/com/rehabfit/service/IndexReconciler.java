@@ -0,0 +1,147 @@
+package com.rehabfit.service;
+
+import com.rehabfit.model.IndexFingerprint;
+import com.rehabfit.model.Progress;
+import com.rehabfit.model.User;
+import com.rehabfit.repository.IndexFingerprintRepository;
+import com.rehabfit.repository.ProgressRepository;
+import com.rehabfit.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings the vector index back in line with Postgres. For every user the expected profile and
+ * progress documents are compared with the recorded fingerprints: missing or changed documents
+ * are enqueued, and indexed documents whose source row is gone are deleted. Documents that only
+ * live in the index (chat, recommendations) are left alone unless their user no longer exists.
+ * When the vector store starts out empty (a local store without a snapshot), the fingerprints
+ * are dropped and everything is re-enqueued on startup.
+ */
+@Service
+public class IndexReconciler {
+    private static final Logger log = LoggerFactory.getLogger(IndexReconciler.class);
+
+    // Document types derived from database rows
+    private static final Set<String> DERIVED_TYPES = Set.of("profile", "progress");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProgressRepository progressRepository;
+
+    @Autowired
+    private IndexFingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private IndexOutboxService indexOutbox;
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Value("${indexing.reconcile.page-size:200}")
+    private int pageSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reindexIfStoreWasLost() {
+        if (!vectorStore.startedEmpty() || fingerprintRepository.count() == 0) return;
+        // Every fingerprint points at a vector that is gone; keeping them would skip the whole re-index
+        fingerprintRepository.deleteAllInBatch();
+        Report report = reconcile();
+        log.info("Vector store started empty; re-enqueued {} documents for {} users", report.enqueued(), report.users());
+    }
+
+    @Scheduled(cron = "${indexing.reconcile.cron:0 30 3 * * *}")
+    public void scheduledReconcile() {
+        Report report = reconcile();
+        log.info("Index reconciliation: {} users, {} documents enqueued, {} deleted", report.users(), report.enqueued(), report.deleted());
+    }
+
+    public Report reconcile() {
+        int users = 0;
+        int enqueued = 0;
+        int deleted = 0;
+        Set<String> seen = new HashSet<>();
+
+        Page<User> page = userRepository.findAll(PageRequest.of(0, pageSize, Sort.by("id")));
+        while (true) {
+            for (User user : page) {
+                String userId = user.getId().toString();
+                seen.add(userId);
+                users++;
+                try {
+                    int[] changes = reconcileUser(user);
+                    enqueued += changes[0];
+                    deleted += changes[1];
+                } catch (Exception e) {
+                    log.warn("Reconciliation failed for user {}: {}", userId, e.getMessage());
+                }
+            }
+            if (!page.hasNext()) break;
+            page = userRepository.findAll(page.nextPageable());
+        }
+
+        // Users deleted from the database: drop everything they had in the index
+        for (String userId : fingerprintRepository.findDistinctUserIds()) {
+            if (seen.contains(userId)) continue;
+            List<IndexFingerprint> orphaned = fingerprintRepository.findByUserId(userId);
+            deleted += delete(userId, orphaned);
+        }
+        return new Report(users, enqueued, deleted);
+    }
+
+    // Returns {enqueued, deleted}
+    private int[] reconcileUser(User user) {
+        String userId = user.getId().toString();
+        Map<String, IndexOutboxService.Document> expected = new HashMap<>();
+        IndexOutboxService.Document profile = indexOutbox.profileDocument(user);
+        expected.put(profile.docId(), profile);
+        for (Progress progress : progressRepository.findByUserId(userId)) {
+            IndexOutboxService.Document doc = indexOutbox.progressDocument(progress);
+            expected.put(doc.docId(), doc);
+        }
+
+        Map<String, IndexFingerprint> indexed = new HashMap<>();
+        for (IndexFingerprint f : fingerprintRepository.findByUserId(userId)) {
+            indexed.put(f.getDocId(), f);
+        }
+
+        int enqueued = 0;
+        for (IndexOutboxService.Document doc : expected.values()) {
+            IndexFingerprint f = indexed.get(doc.docId());
+            if (f == null || !indexOutbox.matches(f, indexOutbox.fingerprint(doc))) {
+                indexOutbox.enqueue(doc);
+                enqueued++;
+            }
+        }
+
+        List<IndexFingerprint> stale = indexed.values().stream()
+            .filter(f -> DERIVED_TYPES.contains(f.getDocType()) && !expected.containsKey(f.getDocId()))
+            .toList();
+        return new int[] {enqueued, delete(userId, stale)};
+    }
+
+    private int delete(String userId, List<IndexFingerprint> fingerprints) {
+        if (fingerprints.isEmpty()) return 0;
+        vectorStore.delete(userId, fingerprints.stream().map(IndexFingerprint::getDocId).toList());
+        fingerprintRepository.deleteAllInBatch(fingerprints);
+        return fingerprints.size();
+    }
+
+    public record Report(int users, int enqueued, int deleted) {}
+}
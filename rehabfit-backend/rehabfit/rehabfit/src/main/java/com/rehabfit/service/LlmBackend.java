@@ -0,0 +1,17 @@
+package com.rehabfit.service;
+
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import io.reactivex.Flowable;
+
+/**
+ * A chat-completion provider behind the {@link LlmGateway}.
+ * Selected with {@code llm.backend} ({@code openai} by default, {@code stub} for local runs and tests).
+ */
+public interface LlmBackend {
+
+    ChatCompletionResult createChatCompletion(ChatCompletionRequest request);
+
+    Flowable<ChatCompletionChunk> streamChatCompletion(ChatCompletionRequest request);
+}
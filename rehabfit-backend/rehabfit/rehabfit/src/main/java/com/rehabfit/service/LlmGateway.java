@@ -0,0 +1,141 @@
+package com.rehabfit.service;
+
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import io.reactivex.Flowable;
+import io.reactivex.functions.Action;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single entry point for chat completions. Owns the model defaults and a global
+ * concurrency cap, and delegates the actual call to the configured {@link LlmBackend}.
+ */
+@Service
+public class LlmGateway {
+
+    @Autowired
+    private LlmBackend backend;
+
+    @Value("${llm.model:gpt-3.5-turbo}")
+    private String model;
+
+    @Value("${llm.max-tokens:512}")
+    private int maxTokens;
+
+    @Value("${llm.temperature:0.2}")
+    private double temperature;
+
+    @Value("${llm.max-concurrent:32}")
+    private int maxConcurrent;
+
+    @Value("${llm.acquire-timeout-ms:10000}")
+    private long acquireTimeoutMs;
+
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /** Blocking completion; returns the content of the first choice. */
+    public String complete(String systemPrompt, String userPrompt) {
+        return completeWithUsage(systemPrompt, userPrompt).content();
+    }
+
+    /** Like {@link #complete}, but also reports how many tokens the call used. */
+    public Completion completeWithUsage(String systemPrompt, String userPrompt) {
+        acquire();
+        try {
+            ChatCompletionResult result = backend.createChatCompletion(buildRequest(systemPrompt, userPrompt, false));
+            long tokens = result.getUsage() == null ? estimateTokens(systemPrompt) + estimateTokens(userPrompt) : result.getUsage().getTotalTokens();
+            return new Completion(result.getChoices().get(0).getMessage().getContent(), tokens);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Streaming completion. The permit is taken when the stream is subscribed and released
+     * when it completes, fails or is cancelled.
+     */
+    public Flowable<ChatCompletionChunk> stream(String systemPrompt, String userPrompt) {
+        return stream(systemPrompt, userPrompt, true);
+    }
+
+    /**
+     * Like {@link #stream}, but never blocks the subscribing thread: if no permit is free the
+     * stream fails straight away. For callers running on I/O completion threads.
+     */
+    public Flowable<ChatCompletionChunk> streamNonBlocking(String systemPrompt, String userPrompt) {
+        return stream(systemPrompt, userPrompt, false);
+    }
+
+    private Flowable<ChatCompletionChunk> stream(String systemPrompt, String userPrompt, boolean waitForPermit) {
+        ChatCompletionRequest request = buildRequest(systemPrompt, userPrompt, true);
+        return Flowable.defer(() -> {
+            if (waitForPermit) {
+                acquire();
+            } else if (!permits.tryAcquire()) {
+                throw new RuntimeException("Too many concurrent LLM requests");
+            }
+            // RxJava 2.0.0 has no doFinally, so release once from whichever terminal signal comes first
+            AtomicBoolean released = new AtomicBoolean();
+            Action release = () -> {
+                if (released.compareAndSet(false, true)) permits.release();
+            };
+            Flowable<ChatCompletionChunk> upstream;
+            try {
+                upstream = backend.streamChatCompletion(request);
+            } catch (RuntimeException e) {
+                // Failed before there was a stream to attach the release to
+                release.run();
+                throw e;
+            }
+            return upstream
+                    .doAfterTerminate(release)
+                    .doOnCancel(release);
+        });
+    }
+
+    public int getAvailablePermits() { return permits.availablePermits(); }
+    public int getMaxConcurrent() { return maxConcurrent; }
+
+    /** Rough token count (about four characters per token), for calls that report no usage, such as streams. */
+    public static long estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    private ChatCompletionRequest buildRequest(String systemPrompt, String userPrompt, boolean stream) {
+        ChatCompletionRequest.ChatCompletionRequestBuilder builder = ChatCompletionRequest.builder()
+            .model(model)
+            .messages(List.of(new ChatMessage("system", systemPrompt), new ChatMessage("user", userPrompt)))
+            .maxTokens(maxTokens)
+            .temperature(temperature);
+        if (stream) builder.stream(true);
+        return builder.build();
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Too many concurrent LLM requests");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an LLM slot", e);
+        }
+    }
+
+    public record Completion(String content, long totalTokens) {}
+}
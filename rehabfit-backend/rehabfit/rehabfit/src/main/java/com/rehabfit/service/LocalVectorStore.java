@@ -0,0 +1,346 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process vector store partitioned by user. Small partitions are searched exactly; once a
+ * partition reaches {@code vector.local.hnsw-threshold} entries it also gets an HNSW graph.
+ * The store can be snapshotted to a file and restored on startup. Graphs are not part of the
+ * snapshot and get rebuilt on load.
+ */
+@Service
+@ConditionalOnProperty(name = "vector.store", havingValue = "local")
+public class LocalVectorStore implements VectorStore {
+    private static final Logger log = LoggerFactory.getLogger(LocalVectorStore.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x52564543; // "RVEC"
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    @Value("${vector.local.hnsw-threshold:2000}")
+    private int hnswThreshold;
+
+    @Value("${vector.local.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${vector.local.hnsw.ef-construction:100}")
+    private int efConstruction;
+
+    @Value("${vector.local.hnsw.ef-search:64}")
+    private int efSearch;
+
+    @Value("${vector.local.snapshot-path:}")
+    private String snapshotPath;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private boolean restored;
+
+    @PostConstruct
+    public void init() {
+        if (!snapshotPath.isBlank() && Files.exists(Path.of(snapshotPath))) {
+            restore(Path.of(snapshotPath));
+            restored = true;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!snapshotPath.isBlank()) {
+            snapshot(Path.of(snapshotPath));
+        }
+    }
+
+    @Override
+    public void upsert(String userId, String id, float[] vector, Map<String, Object> metadata) {
+        Map<String, Object> meta = metadata == null ? new HashMap<>() : new HashMap<>(metadata);
+        meta.put("userId", userId);
+        partitions.computeIfAbsent(userId, u -> new Partition()).upsert(id, normalize(vector), meta);
+    }
+
+    @Override
+    public List<VectorMatch> query(String userId, float[] vector, int topK, Map<String, Object> filter) {
+        Partition partition = partitions.get(userId);
+        if (partition == null || topK <= 0) return List.of();
+        return partition.query(normalize(vector), topK, filter == null ? Map.of() : filter);
+    }
+
+    @Override
+    public void delete(String userId, Collection<String> ids) {
+        Partition partition = partitions.get(userId);
+        if (partition != null) partition.delete(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+        partitions.clear();
+    }
+
+    @Override
+    public boolean startedEmpty() {
+        return !restored;
+    }
+
+    public int size(String userId) {
+        Partition partition = partitions.get(userId);
+        return partition == null ? 0 : partition.liveCount();
+    }
+
+    /** Writes every partition to {@code path}, replacing the previous snapshot atomically. */
+    public void snapshot(Path path) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            int entries = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_FORMAT);
+                Map<String, Partition> copy = new HashMap<>(partitions);
+                out.writeInt(copy.size());
+                for (Map.Entry<String, Partition> e : copy.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    entries += e.getValue().writeTo(out);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote vector snapshot with {} entries to {}", entries, path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write vector snapshot to " + path, e);
+        }
+    }
+
+    /** Replaces the store's contents with the snapshot at {@code path}. */
+    public void restore(Path path) {
+        Map<String, Partition> loaded = new HashMap<>();
+        int entries = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                throw new IllegalStateException("Not a vector snapshot: " + path);
+            }
+            int partitionCount = in.readInt();
+            for (int p = 0; p < partitionCount; p++) {
+                String userId = in.readUTF();
+                Partition partition = new Partition();
+                entries += partition.readFrom(in);
+                loaded.put(userId, partition);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read vector snapshot from " + path, e);
+        }
+        partitions.clear();
+        partitions.putAll(loaded);
+        log.info("Restored {} vectors for {} users from {}", entries, loaded.size(), path);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) norm += v * v;
+        float[] unit = new float[vector.length];
+        if (norm == 0) return unit;
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) unit[i] = vector[i] * inv;
+        return unit;
+    }
+
+    private static boolean matches(Map<String, Object> metadata, Map<String, Object> filter) {
+        for (Map.Entry<String, Object> f : filter.entrySet()) {
+            if (!Objects.equals(String.valueOf(metadata.get(f.getKey())), String.valueOf(f.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One user's vectors. Node numbers are positions in the lists below and line up with the
+     * HNSW graph. Updates and deletes leave a dead node behind; the partition is compacted once
+     * half of it is dead.
+     */
+    private final class Partition {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<String> ids = new ArrayList<>();
+        private final List<float[]> vectors = new ArrayList<>();
+        private final List<Map<String, Object>> metadata = new ArrayList<>();
+        private final Map<String, Integer> nodeById = new HashMap<>();
+        private final BitSet dead = new BitSet();
+        private HnswIndex index;
+        private int dimensions = -1;
+
+        void upsert(String id, float[] vector, Map<String, Object> meta) {
+            lock.writeLock().lock();
+            try {
+                if (dimensions < 0) {
+                    dimensions = vector.length;
+                } else if (vector.length != dimensions) {
+                    throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+                }
+                Integer previous = nodeById.get(id);
+                if (previous != null) dead.set(previous);
+                append(id, vector, meta);
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void delete(Collection<String> toDelete) {
+            lock.writeLock().lock();
+            try {
+                for (String id : toDelete) {
+                    Integer node = nodeById.remove(id);
+                    if (node != null) dead.set(node);
+                }
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<VectorMatch> query(float[] query, int topK, Map<String, Object> filter) {
+            lock.readLock().lock();
+            try {
+                if (index != null) {
+                    // Over-fetch when filtering so the filter rarely leaves us short
+                    int ef = filter.isEmpty() ? efSearch : Math.max(efSearch, topK * 8);
+                    List<HnswIndex.Scored> found = index.search(query, topK, ef,
+                        node -> !dead.get(node) && matches(metadata.get(node), filter));
+                    if (found.size() == topK || found.size() == liveCount()) {
+                        List<VectorMatch> results = new ArrayList<>(found.size());
+                        for (HnswIndex.Scored s : found) results.add(toMatch(s.node(), s.score()));
+                        return results;
+                    }
+                }
+                return exact(query, topK, filter);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int liveCount() {
+            return nodeById.size();
+        }
+
+        private List<VectorMatch> exact(float[] query, int topK, Map<String, Object> filter) {
+            PriorityQueue<HnswIndex.Scored> best = new PriorityQueue<>(Comparator.comparingDouble(HnswIndex.Scored::score));
+            for (int node = 0; node < vectors.size(); node++) {
+                if (dead.get(node) || !matches(metadata.get(node), filter)) continue;
+                float score = HnswIndex.dot(query, vectors.get(node));
+                if (best.size() < topK) {
+                    best.add(new HnswIndex.Scored(node, score));
+                } else if (score > best.peek().score()) {
+                    best.poll();
+                    best.add(new HnswIndex.Scored(node, score));
+                }
+            }
+            List<VectorMatch> results = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                HnswIndex.Scored s = best.poll();
+                results.add(0, toMatch(s.node(), s.score()));
+            }
+            return results;
+        }
+
+        private VectorMatch toMatch(int node, float score) {
+            return new VectorMatch(ids.get(node), score, metadata.get(node));
+        }
+
+        private void append(String id, float[] vector, Map<String, Object> meta) {
+            int node = ids.size();
+            ids.add(id);
+            vectors.add(vector);
+            metadata.add(meta);
+            nodeById.put(id, node);
+            if (index != null) {
+                index.add(vector);
+            } else if (liveCount() >= hnswThreshold) {
+                buildIndex();
+            }
+        }
+
+        private void buildIndex() {
+            index = new HnswIndex(hnswM, efConstruction, ids.size());
+            for (float[] vector : vectors) index.add(vector);
+        }
+
+        private void compactIfNeeded() {
+            int deadCount = dead.cardinality();
+            if (deadCount < 64 || deadCount * 2 < ids.size()) return;
+            List<String> oldIds = new ArrayList<>(ids);
+            List<float[]> oldVectors = new ArrayList<>(vectors);
+            List<Map<String, Object>> oldMetadata = new ArrayList<>(metadata);
+            BitSet oldDead = (BitSet) dead.clone();
+            ids.clear();
+            vectors.clear();
+            metadata.clear();
+            nodeById.clear();
+            dead.clear();
+            index = null;
+            for (int node = 0; node < oldIds.size(); node++) {
+                if (!oldDead.get(node)) append(oldIds.get(node), oldVectors.get(node), oldMetadata.get(node));
+            }
+        }
+
+        int writeTo(DataOutputStream out) throws IOException {
+            lock.readLock().lock();
+            try {
+                out.writeInt(dimensions);
+                out.writeInt(liveCount());
+                for (int node = 0; node < ids.size(); node++) {
+                    if (dead.get(node)) continue;
+                    out.writeUTF(ids.get(node));
+                    for (float v : vectors.get(node)) out.writeFloat(v);
+                    byte[] meta = mapper.writeValueAsBytes(metadata.get(node));
+                    out.writeInt(meta.length);
+                    out.write(meta);
+                }
+                return liveCount();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int readFrom(DataInputStream in) throws IOException {
+            dimensions = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                float[] vector = new float[dimensions];
+                for (int d = 0; d < dimensions; d++) vector[d] = in.readFloat();
+                byte[] meta = new byte[in.readInt()];
+                in.readFully(meta);
+                append(id, vector, mapper.readValue(new String(meta, StandardCharsets.UTF_8), new TypeReference<Map<String, Object>>() {}));
+            }
+            return count;
+        }
+    }
+}
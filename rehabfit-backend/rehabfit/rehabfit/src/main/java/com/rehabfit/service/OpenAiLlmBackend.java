@@ -0,0 +1,124 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.config.Upstream;
+import com.rehabfit.config.UpstreamClientRegistry;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.service.OpenAiService;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenAI backend holding one long-lived OkHttp client, connection pool and dispatcher,
+ * shared by every chat and dashboard request.
+ * With {@code llm.openai.stream-transport=jdk}, streaming goes through the JDK's non-blocking
+ * client instead; OkHttp reads each stream on a dispatcher thread for the stream's whole life.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.backend", havingValue = "openai", matchIfMissing = true)
+public class OpenAiLlmBackend implements LlmBackend {
+
+    @Value("${openai.api.key}")
+    private String openAiApiKey;
+
+    @Value("${llm.openai.stream-transport:okhttp}")
+    private String streamTransport;
+
+    @Value("${llm.openai.base-url:https://api.openai.com/}")
+    private String baseUrl;
+
+    @Autowired
+    private UpstreamClientRegistry upstreamClients;
+
+    private final ObjectMapper mapper = OpenAiService.defaultObjectMapper();
+
+    private OkHttpClient client;
+    private OpenAiApi api;
+    private OpenAiService service;
+    private Scheduler callScheduler;
+    private URI chatCompletions;
+
+    @PostConstruct
+    public void init() {
+        UpstreamClientRegistry.Settings settings = upstreamClients.settings(Upstream.LLM);
+
+        // OkHttp only allows 5 concurrent calls per host by default; lift it to the configured pool size
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(settings.maxConnections());
+        dispatcher.setMaxRequestsPerHost(settings.maxConnectionsPerRoute());
+
+        client = OpenAiService.defaultClient(openAiApiKey, Duration.ofMillis(settings.readTimeoutMs()))
+                .newBuilder()
+                .connectTimeout(settings.connectTimeoutMs(), TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(settings.maxConnections(), 5, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .build();
+        // The SDK's paths are absolute (/v1/...), so only scheme, host and port of the base URL count
+        String base = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        chatCompletions = URI.create(base).resolve("/v1/chat/completions");
+        api = OpenAiService.defaultRetrofit(client, OpenAiService.defaultObjectMapper())
+                .newBuilder()
+                .baseUrl(base)
+                .build()
+                .create(OpenAiApi.class);
+        service = new OpenAiService(api, client.dispatcher().executorService());
+        callScheduler = Schedulers.from(client.dispatcher().executorService());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        service.shutdownExecutor();
+        client.connectionPool().evictAll();
+    }
+
+    // The call runs on a dispatcher thread so the caller's wait can be interrupted; an interrupt
+    // disposes the call, which cancels it on the wire and lets the gateway release its permit
+    @Override
+    public ChatCompletionResult createChatCompletion(ChatCompletionRequest request) {
+        return OpenAiService.execute(api.createChatCompletion(request).subscribeOn(callScheduler));
+    }
+
+    @Override
+    public Flowable<ChatCompletionChunk> streamChatCompletion(ChatCompletionRequest request) {
+        if ("jdk".equalsIgnoreCase(streamTransport)) {
+            return streamWithJdkClient(request);
+        }
+        return service.streamChatCompletion(request);
+    }
+
+    // Reads the server-sent events line by line; only requested lines are pulled off the socket
+    private Flowable<ChatCompletionChunk> streamWithJdkClient(ChatCompletionRequest request) {
+        return Flowable.defer(() -> {
+            HttpRequest httpRequest = HttpRequest.newBuilder(chatCompletions)
+                    .timeout(Duration.ofMillis(upstreamClients.settings(Upstream.LLM).readTimeoutMs()))
+                    .header("Authorization", "Bearer " + openAiApiKey)
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "text/event-stream")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(request)))
+                    .build();
+            return Flowable.fromPublisher(new HttpLinePublisher(upstreamClients.asyncClient(Upstream.LLM), httpRequest))
+                    .filter(line -> line.startsWith("data:"))
+                    .map(line -> line.substring(5).trim())
+                    .takeWhile(data -> !"[DONE]".equals(data))
+                    .map(data -> mapper.readValue(data, ChatCompletionChunk.class));
+        });
+    }
+}
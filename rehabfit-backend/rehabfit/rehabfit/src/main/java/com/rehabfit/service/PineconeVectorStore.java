@@ -0,0 +1,178 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.config.Upstream;
+import com.rehabfit.config.UpstreamClientRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pinecone over its REST API. User isolation is a {@code userId} metadata filter on a shared index.
+ */
+@Service
+@ConditionalOnProperty(name = "vector.store", havingValue = "pinecone", matchIfMissing = true)
+public class PineconeVectorStore implements VectorStore {
+
+    @Autowired
+    private UpstreamClientRegistry upstreamClients;
+
+    @Value("${pinecone.api.key}")
+    private String pineconeApiKey;
+
+    @Value("${pinecone.environment}")
+    private String pineconeEnv;
+
+    @Value("${pinecone.index}")
+    private String pineconeIndex;
+
+    @Value("${pinecone.project}")
+    private String pineconeProject;
+
+    // Overrides the index host derived from the settings above, e.g. for a local stand-in
+    @Value("${pinecone.base-url:}")
+    private String pineconeBaseUrl;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Pinecone's recommended upper bound for vectors per upsert request
+    private static final int MAX_UPSERT_BATCH = 100;
+
+    @Override
+    public void upsert(String userId, String id, float[] vector, Map<String, Object> metadata) {
+        post("/vectors/upsert", Map.of("vectors", List.of(toPinecone(new VectorEntry(userId, id, vector, metadata)))));
+    }
+
+    @Override
+    public void upsertAll(List<VectorEntry> entries) {
+        for (int from = 0; from < entries.size(); from += MAX_UPSERT_BATCH) {
+            List<Map<String, Object>> vectors = new ArrayList<>();
+            for (VectorEntry entry : entries.subList(from, Math.min(entries.size(), from + MAX_UPSERT_BATCH))) {
+                vectors.add(toPinecone(entry));
+            }
+            post("/vectors/upsert", Map.of("vectors", vectors));
+        }
+    }
+
+    @Override
+    public List<VectorMatch> query(String userId, float[] vector, int topK, Map<String, Object> filter) {
+        ResponseEntity<Map> response = post("/query", queryBody(userId, vector, topK, filter));
+        if (!response.getStatusCode().is2xxSuccessful()) return List.of();
+        return parseMatches(response.getBody());
+    }
+
+    // Same query over the non-blocking client, so no thread waits on the round trip
+    @Override
+    public CompletableFuture<List<VectorMatch>> queryAsync(String userId, float[] vector, int topK) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url("/query")))
+                .timeout(Duration.ofMillis(upstreamClients.settings(Upstream.VECTOR_STORE).readTimeoutMs()))
+                .header("Api-Key", pineconeApiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(queryBody(userId, vector, topK, Map.of()))))
+                .build();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return upstreamClients.asyncClient(Upstream.VECTOR_STORE)
+            .sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(response -> {
+                if (response.statusCode() / 100 != 2) {
+                    throw new IllegalStateException("Pinecone query failed with HTTP " + response.statusCode());
+                }
+                try {
+                    return parseMatches(mapper.readValue(response.body(), Map.class));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unreadable Pinecone response", e);
+                }
+            });
+    }
+
+    @Override
+    public void delete(String userId, Collection<String> ids) {
+        if (ids.isEmpty()) return;
+        post("/vectors/delete", Map.of("ids", List.copyOf(ids)));
+    }
+
+    @Override
+    public void deleteAll() {
+        post("/vectors/delete", Map.of("deleteAll", true));
+    }
+
+    static Map<String, Object> queryBody(String userId, float[] vector, int topK, Map<String, Object> filter) {
+        Map<String, Object> fullFilter = new HashMap<>();
+        if (filter != null) fullFilter.putAll(filter);
+        fullFilter.put("userId", userId);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("vector", vector);
+        body.put("topK", topK);
+        body.put("includeMetadata", true);
+        body.put("filter", fullFilter);
+        return body;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<VectorMatch> parseMatches(Map<?, ?> body) {
+        List<VectorMatch> results = new ArrayList<>();
+        if (body == null) return results;
+        List<Map<String, Object>> matches = (List<Map<String, Object>>) body.get("matches");
+        if (matches != null) {
+            for (Map<String, Object> match : matches) {
+                Object score = match.get("score");
+                Map<String, Object> metadata = (Map<String, Object>) match.get("metadata");
+                results.add(new VectorMatch((String) match.get("id"),
+                    score instanceof Number n ? n.floatValue() : 0f,
+                    metadata != null ? metadata : Map.of()));
+            }
+        }
+        return results;
+    }
+
+    static Map<String, Object> toPinecone(VectorEntry entry) {
+        Map<String, Object> meta = entry.metadata() == null ? new HashMap<>() : new HashMap<>(entry.metadata());
+        meta.put("userId", entry.userId()); // associate with user
+
+        Map<String, Object> vector = new HashMap<>();
+        vector.put("id", entry.id());
+        vector.put("values", entry.vector());
+        vector.put("metadata", meta);
+        return vector;
+    }
+
+    private String url(String path) {
+        if (pineconeBaseUrl != null && !pineconeBaseUrl.isBlank()) {
+            return pineconeBaseUrl.replaceAll("/+$", "") + path;
+        }
+        return String.format("https://%s-%s.svc.%s.pinecone.io%s", pineconeIndex, pineconeProject, pineconeEnv, path);
+    }
+
+    private ResponseEntity<Map> post(String path, Map<String, Object> body) {
+        String url = url(path);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Api-Key", pineconeApiKey);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
+        return upstreamClients.restTemplate(Upstream.VECTOR_STORE).postForEntity(url, entity, Map.class);
+    }
+}
@@ -0,0 +1,126 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.model.Progress;
+import com.rehabfit.repository.ProgressRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a user's progress history straight from a database cursor to an output stream.
+ * Rows are read in fetch-size batches inside one read-only transaction and detached once
+ * written, so memory stays flat however long the history is.
+ */
+@Service
+public class ProgressExportService {
+    private static final Logger log = LoggerFactory.getLogger(ProgressExportService.class);
+
+    // Open-ended upper bound, kept inside what every database can store as a DATE
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+
+    @Autowired
+    private ProgressRepository progressRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate readOnly;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ProgressExportService(PlatformTransactionManager transactionManager) {
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Streams entries dated within [from, to] (either may be null) to {@code out}; returns the row
+     * count. Without {@code from}, entries older versions saved undated come first, with an empty date.
+     */
+    public long export(String userId, LocalDate from, LocalDate to, Format format, boolean gzip, OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator json = null;
+        if (format == Format.NDJSON) {
+            json = mapper.getFactory().createGenerator(writer);
+            // Lines are ended explicitly; no extra separator between root values
+            json.setRootValueSeparator(null);
+        }
+        JsonGenerator ndjson = json;
+        if (format == Format.CSV) {
+            writer.write("id,date,painLevel,mobility,strength\n");
+        }
+
+        Long rows;
+        try {
+            rows = readOnly.execute(status -> {
+                long count = 0;
+                LocalDate until = to == null ? LATEST : to;
+                try (Stream<Progress> stream = from == null
+                        ? progressRepository.streamByUserIdUpTo(userId, until)
+                        : progressRepository.streamByUserIdBetween(userId, from, until)) {
+                    Iterator<Progress> it = stream.iterator();
+                    while (it.hasNext()) {
+                        Progress p = it.next();
+                        if (ndjson != null) {
+                            writeJson(ndjson, p);
+                        } else {
+                            writer.write(p.getId() + "," + dateOf(p) + "," + p.getPainLevel() + "," + p.getMobility() + "," + p.getStrength() + "\n");
+                        }
+                        // Nothing is kept in the persistence context between batches
+                        entityManager.detach(p);
+                        count++;
+                    }
+                } catch (IOException e) {
+                    // Usually the client going away; abandon the cursor
+                    throw new UncheckedIOException(e);
+                }
+                return count;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (json != null) json.flush();
+        writer.flush();
+        if (target instanceof GZIPOutputStream gz) gz.finish();
+        log.info("Exported {} progress rows for user {} in {} ms", rows, userId, System.currentTimeMillis() - started);
+        return rows == null ? 0 : rows;
+    }
+
+    private static void writeJson(JsonGenerator json, Progress p) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", p.getId());
+        json.writeStringField("date", dateOf(p));
+        json.writeNumberField("painLevel", p.getPainLevel());
+        json.writeNumberField("mobility", p.getMobility());
+        json.writeNumberField("strength", p.getStrength());
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private static String dateOf(Progress p) {
+        return p.getDate() == null ? "" : p.getDate().toString();
+    }
+
+    public enum Format { CSV, NDJSON }
+}
@@ -0,0 +1,280 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.model.Progress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk progress import. The body is read line by line (NDJSON objects or CSV rows) and never
+ * held in memory as a whole; valid rows are written in chunks of {@code progress.import.batch-size},
+ * each chunk in its own transaction: one JDBC batch insert for the entries, one rollup update
+ * per touched bucket, and one batch of outbox rows so the indexer embeds and upserts them in
+ * batches too. Bad lines, including rows without a valid date, are reported by number and
+ * skipped. A CSV header must name a date column. Bodies of unknown format are recognised by
+ * their first line.
+ */
+@Service
+public class ProgressImportService {
+    private static final Logger log = LoggerFactory.getLogger(ProgressImportService.class);
+
+    private static final String INSERT_SQL =
+        "insert into progress (user_id, date, pain_level, mobility, strength) values (?, ?, ?, ?, ?)";
+
+    private static final String[] DEFAULT_CSV_COLUMNS = {"date", "painlevel", "mobility", "strength"};
+
+    private static final Set<String> CSV_COLUMN_NAMES = Set.of("date", "painlevel", "pain_level", "pain", "mobility", "strength");
+
+    // Spreadsheet apps often start UTF-8 CSV exports with a byte order mark
+    private static final char BOM = '\uFEFF';
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProgressRollupService rollups;
+
+    @Autowired
+    private IndexOutboxService indexOutbox;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${progress.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${progress.import.max-rows:1000000}")
+    private long maxRows;
+
+    @Value("${progress.import.max-errors:100}")
+    private int maxReportedErrors;
+
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ProgressImportService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public ImportReport importProgress(String userId, InputStream body, Format format, boolean index) throws IOException {
+        long started = System.currentTimeMillis();
+        long lineNumber = 0;
+        long imported = 0;
+        long rejected = 0;
+        List<LineError> errors = new ArrayList<>();
+        List<Progress> chunk = new ArrayList<>(batchSize);
+        String[] columns = DEFAULT_CSV_COLUMNS;
+        boolean truncated = false;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 64 * 1024);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == BOM) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) continue;
+            if (format == Format.DETECT) {
+                // Plain text: JSON objects start with a brace, anything else is taken as CSV
+                format = line.stripLeading().startsWith("{") ? Format.NDJSON : Format.CSV;
+            }
+            if (format == Format.CSV && lineNumber == 1 && isCsvHeader(line)) {
+                columns = splitCsv(line.toLowerCase());
+                if (!Arrays.asList(columns).contains("date")) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "CSV header has no date column");
+                }
+                continue;
+            }
+            if (imported + chunk.size() >= maxRows) {
+                truncated = true;
+                break;
+            }
+            try {
+                chunk.add(format == Format.CSV ? parseCsv(userId, line, columns) : parseJson(userId, line));
+            } catch (RuntimeException e) {
+                rejected++;
+                if (errors.size() < maxReportedErrors) {
+                    errors.add(new LineError(lineNumber, e.getMessage()));
+                }
+            }
+            if (chunk.size() >= batchSize) {
+                imported += flush(chunk, index);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            imported += flush(chunk, index);
+        }
+        if (imported > 0) {
+            eventPublisher.publishEvent(new UserDataChangedEvent(userId, UserDataChangedEvent.Kind.PROGRESS));
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        log.info("Progress import for user {}: {} rows imported, {} rejected in {} ms", userId, imported, rejected, elapsed);
+        return new ImportReport(imported, rejected, truncated, elapsed, errors);
+    }
+
+    // Writes one chunk atomically and returns how many rows it stored
+    private int flush(List<Progress> chunk, boolean index) {
+        return transactionTemplate.execute(status -> {
+            GeneratedKeyHolder keys = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_SQL, new String[] {"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Progress p = chunk.get(i);
+                        ps.setString(1, p.getUserId());
+                        ps.setDate(2, Date.valueOf(p.getDate()));
+                        ps.setInt(3, p.getPainLevel());
+                        ps.setInt(4, p.getMobility());
+                        ps.setInt(5, p.getStrength());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return chunk.size();
+                    }
+                },
+                keys);
+            List<Map<String, Object>> ids = keys.getKeyList();
+            for (int i = 0; i < chunk.size() && i < ids.size(); i++) {
+                chunk.get(i).setId(((Number) ids.get(i).get("id")).longValue());
+            }
+
+            rollups.addAll(chunk);
+            if (index) {
+                List<IndexOutboxService.Document> documents = new ArrayList<>(chunk.size());
+                for (Progress p : chunk) {
+                    documents.add(indexOutbox.progressDocument(p));
+                }
+                indexOutbox.enqueueNew(documents);
+            }
+            return chunk.size();
+        });
+    }
+
+    private Progress parseJson(String userId, String line) {
+        JsonNode node;
+        try {
+            node = mapper.readTree(line);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed JSON");
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        return build(userId, text(node, "date"), text(node, "painLevel"), text(node, "mobility"), text(node, "strength"));
+    }
+
+    private Progress parseCsv(String userId, String line, String[] columns) {
+        String[] values = splitCsv(line);
+        if (values.length < columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " columns, got " + values.length);
+        }
+        String date = null, pain = null, mobility = null, strength = null;
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case "date" -> date = values[i];
+                case "painlevel", "pain_level", "pain" -> pain = values[i];
+                case "mobility" -> mobility = values[i];
+                case "strength" -> strength = values[i];
+                default -> { }
+            }
+        }
+        return build(userId, date, pain, mobility, strength);
+    }
+
+    private static Progress build(String userId, String date, String pain, String mobility, String strength) {
+        Progress progress = new Progress();
+        progress.setUserId(userId);
+        if (date == null || date.isEmpty()) {
+            throw new IllegalArgumentException("Missing date");
+        }
+        try {
+            progress.setDate(LocalDate.parse(date));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid date '" + date + "'");
+        }
+        progress.setPainLevel(score("painLevel", pain));
+        progress.setMobility(score("mobility", mobility));
+        progress.setStrength(score("strength", strength));
+        return progress;
+    }
+
+    // Scores are on the same 0-10 scale the app logs them with
+    private static int score(String field, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        int score;
+        try {
+            score = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + " '" + value + "'");
+        }
+        if (score < 0 || score > 10) {
+            throw new IllegalArgumentException(field + " must be between 0 and 10");
+        }
+        return score;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText().trim();
+    }
+
+    // A header names at least one known column; data rows are dates and numbers
+    private static boolean isCsvHeader(String line) {
+        for (String cell : splitCsv(line.toLowerCase())) {
+            if (CSV_COLUMN_NAMES.contains(cell)) return true;
+        }
+        return false;
+    }
+
+    // The import columns are dates and small integers, so quoting is only ever cosmetic
+    private static String[] splitCsv(String line) {
+        String[] parts = line.split(",", -1);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.length() >= 2 && part.startsWith("\"") && part.endsWith("\"")) {
+                part = part.substring(1, part.length() - 1).trim();
+            }
+            parts[i] = part;
+        }
+        return parts;
+    }
+
+    // DETECT picks NDJSON or CSV from the first non-blank line
+    public enum Format { NDJSON, CSV, DETECT }
+
+    public record LineError(long line, String message) {}
+
+    public record ImportReport(long imported, long rejected, boolean truncated, long elapsedMs, List<LineError> errors) {}
+}
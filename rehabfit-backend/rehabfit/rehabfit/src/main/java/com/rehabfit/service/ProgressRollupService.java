@@ -0,0 +1,284 @@
+package com.rehabfit.service;
+
+import com.rehabfit.model.Progress;
+import com.rehabfit.model.ProgressRollup;
+import com.rehabfit.model.ProgressRollup.Granularity;
+import com.rehabfit.repository.ProgressRepository;
+import com.rehabfit.repository.ProgressRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Keeps per-user day, week and month rollups of progress entries. Every logged entry is
+ * added to its three buckets in the writer's transaction, so readers get charts and averages
+ * from a handful of bucket rows instead of scanning the log. {@link #rebuild} backfills a user
+ * from the raw rows and {@link #check} compares the rollups with them. Whole-log rebuilds and
+ * repairs run one at a time; a second one is refused with 409 while the first is running.
+ */
+@Service
+public class ProgressRollupService {
+    private static final Logger log = LoggerFactory.getLogger(ProgressRollupService.class);
+
+    @Autowired
+    private ProgressRollupRepository rollupRepository;
+
+    @Autowired
+    private ProgressRepository progressRepository;
+
+    @Autowired
+    @Qualifier("maintenanceExecutor")
+    private ThreadPoolTaskExecutor maintenanceExecutor;
+
+    @Value("${progress.rollup.check-repair:true}")
+    private boolean repairOnCheck;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final TransactionTemplate transactionTemplate;
+
+    public ProgressRollupService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /** Adds a new entry to its buckets. Must run in the transaction that saves the entry. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(Progress progress) {
+        apply(progress, 1);
+    }
+
+    /**
+     * Adds many new entries at once. Deltas are summed per bucket first, so a batch costs one
+     * update per touched bucket rather than three per entry.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void addAll(List<Progress> progresses) {
+        Map<BucketKey, long[]> deltas = new LinkedHashMap<>();
+        for (Progress progress : progresses) {
+            LocalDate date = Objects.requireNonNull(progress.getDate(), "Progress date is required for rollups");
+            for (Granularity granularity : Granularity.values()) {
+                long[] delta = deltas.computeIfAbsent(
+                    new BucketKey(progress.getUserId(), granularity, granularity.bucketStart(date)), k -> new long[4]);
+                delta[0]++;
+                delta[1] += progress.getPainLevel();
+                delta[2] += progress.getMobility();
+                delta[3] += progress.getStrength();
+            }
+        }
+        for (Map.Entry<BucketKey, long[]> entry : deltas.entrySet()) {
+            BucketKey key = entry.getKey();
+            long[] d = entry.getValue();
+            if (rollupRepository.increment(key.userId(), key.granularity(), key.bucketStart(), d[0], d[1], d[2], d[3]) == 0) {
+                rollupRepository.insertIfAbsent(key.userId(), key.granularity().name(), key.bucketStart());
+                rollupRepository.increment(key.userId(), key.granularity(), key.bucketStart(), d[0], d[1], d[2], d[3]);
+            }
+        }
+    }
+
+    /** Takes a deleted entry (or the old state of an edited one) back out of its buckets. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void remove(Progress progress) {
+        apply(progress, -1);
+        rollupRepository.deleteEmpty(progress.getUserId());
+    }
+
+    public List<Bucket> series(String userId, Granularity granularity, LocalDate since) {
+        List<ProgressRollup> rows = since == null
+            ? rollupRepository.findByUserIdAndGranularityOrderByBucketStart(userId, granularity)
+            : rollupRepository.findByUserIdAndGranularityAndBucketStartGreaterThanEqualOrderByBucketStart(userId, granularity, since);
+        List<Bucket> buckets = new ArrayList<>(rows.size());
+        for (ProgressRollup row : rows) {
+            buckets.add(Bucket.of(row.getBucketStart(), row.getEntries(), row.getSumPain(), row.getSumMobility(), row.getSumStrength()));
+        }
+        return buckets;
+    }
+
+    /** Whole-log averages, summed from the monthly buckets. */
+    public Totals totals(String userId) {
+        long entries = 0, pain = 0, mobility = 0, strength = 0;
+        LocalDate first = null, latest = null;
+        for (ProgressRollup row : rollupRepository.findByUserIdAndGranularityOrderByBucketStart(userId, Granularity.MONTH)) {
+            entries += row.getEntries();
+            pain += row.getSumPain();
+            mobility += row.getSumMobility();
+            strength += row.getSumStrength();
+            if (first == null) first = row.getBucketStart();
+            latest = row.getBucketStart();
+        }
+        if (entries == 0) {
+            return new Totals(0, null, null, null, null, null);
+        }
+        return new Totals(entries, (double) pain / entries, (double) mobility / entries, (double) strength / entries, first, latest);
+    }
+
+    /** Replaces all of a user's rollups with totals recomputed from the raw rows. */
+    public void rebuild(String userId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            rollupRepository.deleteByUserId(userId);
+            for (Granularity granularity : Granularity.values()) {
+                rollupRepository.insertFromRaw(userId, granularity.name(), granularity.unit());
+            }
+        });
+    }
+
+    public RebuildReport rebuildAll() {
+        return exclusively(this::rebuildEveryUser);
+    }
+
+    private RebuildReport rebuildEveryUser() {
+        int users = 0;
+        int failed = 0;
+        for (String userId : progressRepository.findDistinctUserIds()) {
+            try {
+                rebuild(userId);
+                users++;
+            } catch (Exception e) {
+                failed++;
+                log.warn("Progress rollup rebuild failed for user {}: {}", userId, e.getMessage());
+            }
+        }
+        log.info("Progress rollups rebuilt for {} users ({} failed)", users, failed);
+        return new RebuildReport(users, failed);
+    }
+
+    /** Compares one user's rollups with the raw rows; lists every bucket that differs. */
+    public List<Mismatch> check(String userId) {
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (Granularity granularity : Granularity.values()) {
+            Map<LocalDate, ProgressRollup> stored = new HashMap<>();
+            for (ProgressRollup row : rollupRepository.findByUserIdAndGranularityOrderByBucketStart(userId, granularity)) {
+                stored.put(row.getBucketStart(), row);
+            }
+            for (ProgressRollupRepository.BucketTotals expected : rollupRepository.aggregateRaw(userId, granularity.unit())) {
+                ProgressRollup actual = stored.remove(expected.getBucketStart());
+                if (actual == null || actual.getEntries() != expected.getEntries() || actual.getSumPain() != expected.getSumPain()
+                        || actual.getSumMobility() != expected.getSumMobility() || actual.getSumStrength() != expected.getSumStrength()) {
+                    mismatches.add(new Mismatch(userId, granularity, expected.getBucketStart(),
+                        expected.getEntries(), actual == null ? 0 : actual.getEntries()));
+                }
+            }
+            // Buckets with no raw rows behind them at all
+            for (ProgressRollup orphan : stored.values()) {
+                mismatches.add(new Mismatch(userId, granularity, orphan.getBucketStart(), 0, orphan.getEntries()));
+            }
+        }
+        return mismatches;
+    }
+
+    // First start after rollups were introduced: backfill once instead of showing empty charts until the nightly check
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (rollupRepository.count() == 0 && progressRepository.count() > 0) {
+            maintenanceExecutor.execute(() -> {
+                try {
+                    rebuildAll();
+                } catch (ResponseStatusException e) {
+                    log.info("Skipping progress rollup backfill: {}", e.getReason());
+                }
+            });
+        }
+    }
+
+    @Scheduled(cron = "${progress.rollup.check-cron:0 0 4 * * *}")
+    public void scheduledCheck() {
+        CheckReport report;
+        try {
+            report = checkAll(repairOnCheck);
+        } catch (ResponseStatusException e) {
+            log.info("Skipping progress rollup check: {}", e.getReason());
+            return;
+        }
+        log.info("Progress rollup check: {} users, {} mismatched buckets, {} repaired", report.users(), report.mismatchedBuckets(), report.repaired());
+    }
+
+    /** Checks every user with progress; with {@code repair}, users that differ are rebuilt. */
+    public CheckReport checkAll(boolean repair) {
+        return repair ? exclusively(() -> checkEveryUser(true)) : checkEveryUser(false);
+    }
+
+    private CheckReport checkEveryUser(boolean repair) {
+        int users = 0;
+        int repaired = 0;
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (String userId : progressRepository.findDistinctUserIds()) {
+            users++;
+            List<Mismatch> found = check(userId);
+            if (found.isEmpty()) continue;
+            mismatches.addAll(found);
+            if (repair) {
+                rebuild(userId);
+                repaired++;
+            }
+        }
+        return new CheckReport(users, mismatches.size(), repaired, mismatches.size() > 100 ? mismatches.subList(0, 100) : mismatches);
+    }
+
+    // Rebuilds of the whole log would otherwise rewrite the same buckets side by side
+    private <T> T exclusively(Supplier<T> job) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A progress rollup rebuild is already running");
+        }
+        try {
+            return job.get();
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void apply(Progress progress, int sign) {
+        LocalDate date = Objects.requireNonNull(progress.getDate(), "Progress date is required for rollups");
+        for (Granularity granularity : Granularity.values()) {
+            LocalDate bucket = granularity.bucketStart(date);
+            if (increment(progress, granularity, bucket, sign) == 0) {
+                // First entry in this bucket; the insert is a no-op if a concurrent writer beat us to it
+                rollupRepository.insertIfAbsent(progress.getUserId(), granularity.name(), bucket);
+                increment(progress, granularity, bucket, sign);
+            }
+        }
+    }
+
+    private int increment(Progress progress, Granularity granularity, LocalDate bucket, int sign) {
+        return rollupRepository.increment(progress.getUserId(), granularity, bucket, sign,
+            (long) sign * progress.getPainLevel(), (long) sign * progress.getMobility(), (long) sign * progress.getStrength());
+    }
+
+    private record BucketKey(String userId, Granularity granularity, LocalDate bucketStart) {}
+
+    public record Bucket(LocalDate bucketStart, long entries, double avgPain, double avgMobility, double avgStrength) {
+        static Bucket of(LocalDate start, long entries, long pain, long mobility, long strength) {
+            double n = Math.max(1, entries);
+            return new Bucket(start, entries, pain / n, mobility / n, strength / n);
+        }
+    }
+
+    public record Totals(long entries, Double avgPain, Double avgMobility, Double avgStrength, LocalDate firstMonth, LocalDate latestMonth) {}
+
+    public record RebuildReport(int users, int failed) {}
+
+    public record Mismatch(String userId, Granularity granularity, LocalDate bucketStart, long expectedEntries, long storedEntries) {}
+
+    public record CheckReport(int users, int mismatchedBuckets, int repaired, List<Mismatch> sample) {}
+}
@@ -0,0 +1,137 @@
+package com.rehabfit.service;
+
+import com.rehabfit.model.Progress;
+import com.rehabfit.model.ProgressRollup;
+import com.rehabfit.repository.ProgressRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class ProgressService {
+
+    static final int MAX_PAGE_SIZE = 100;
+
+    @Autowired
+    private ProgressRepository progressRepository;
+
+    @Autowired
+    private IndexOutboxService indexOutbox;
+
+    @Autowired
+    private ProgressRollupService rollups;
+
+    // Saves the entry, updates its rollups and queues it for RAG indexing in one transaction
+    @Transactional
+    public Progress logProgress(String userId, Progress progress) {
+        progress.setUserId(userId);
+        if (progress.getDate() == null) {
+            // History is keyed on date, so every entry needs one
+            progress.setDate(LocalDate.now());
+        }
+        Progress saved = progressRepository.save(progress);
+        rollups.add(saved);
+        indexOutbox.enqueueProgress(saved);
+        return saved;
+    }
+
+    /**
+     * One page of a user's progress history, newest first. {@code cursor} is the
+     * {@code nextCursor} of the previous page, or null for the first page. Pages are keyed on
+     * (date, id), so they stay stable while new entries are logged. Undated entries from older
+     * versions make up the last pages, keyed on id alone.
+     */
+    public ProgressPage history(String userId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // One extra row tells us whether there is a next page
+        Pageable limit = Pageable.ofSize(pageSize + 1);
+        List<Progress> rows;
+        boolean inUndatedTail = false;
+        if (cursor == null || cursor.isBlank()) {
+            rows = progressRepository.findLatest(userId, limit);
+        } else {
+            Cursor after = Cursor.decode(cursor);
+            inUndatedTail = after.date() == null;
+            rows = inUndatedTail
+                ? progressRepository.findUndatedBefore(userId, after.id(), limit)
+                : progressRepository.findBefore(userId, after.date(), after.id(), limit);
+        }
+        if (!inUndatedTail && rows.size() <= pageSize) {
+            // Dated entries ran out on this page; fill it up from the undated ones
+            rows = new ArrayList<>(rows);
+            rows.addAll(progressRepository.findUndatedBefore(userId, Long.MAX_VALUE, Pageable.ofSize(limit.getPageSize() - rows.size())));
+        }
+        boolean more = rows.size() > pageSize;
+        List<Progress> items = more ? rows.subList(0, pageSize) : rows;
+        String next = null;
+        if (more) {
+            Progress last = items.get(items.size() - 1);
+            next = new Cursor(last.getDate(), last.getId()).encode();
+        }
+        return new ProgressPage(toMaps(items), next);
+    }
+
+    /** The user's latest {@code count} dated entries, oldest first (chart order). */
+    public List<Map<String, Object>> recent(String userId, int count) {
+        List<Progress> rows = new ArrayList<>(progressRepository.findLatest(userId, Pageable.ofSize(Math.max(1, count))));
+        Collections.reverse(rows);
+        return toMaps(rows);
+    }
+
+    public ProgressRepository.ProgressStats stats(String userId) {
+        return progressRepository.findStatsByUserId(userId);
+    }
+
+    /** Per-week averages for the last {@code weeks} weeks, oldest first, from the rollups. */
+    public List<ProgressRollupService.Bucket> weekly(String userId, int weeks) {
+        LocalDate since = ProgressRollup.Granularity.WEEK.bucketStart(LocalDate.now().minusWeeks(Math.max(1, weeks)));
+        return rollups.series(userId, ProgressRollup.Granularity.WEEK, since);
+    }
+
+    // Same entry shape the dashboard has always returned
+    static List<Map<String, Object>> toMaps(List<Progress> progresses) {
+        List<Map<String, Object>> data = new ArrayList<>(progresses.size());
+        for (Progress p : progresses) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("id", p.getId());
+            entry.put("date", String.valueOf(p.getDate()));
+            entry.put("painLevel", p.getPainLevel());
+            entry.put("mobility", p.getMobility());
+            entry.put("strength", p.getStrength());
+            data.add(entry);
+        }
+        return data;
+    }
+
+    public record ProgressPage(List<Map<String, Object>> items, String nextCursor) {}
+
+    // Opaque to clients: base64url of "date|id", with an empty date in the undated tail
+    private record Cursor(LocalDate date, Long id) {
+        String encode() {
+            String key = (date == null ? "" : date.toString()) + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                LocalDate date = sep == 0 ? null : LocalDate.parse(raw.substring(0, sep));
+                return new Cursor(date, Long.valueOf(raw.substring(sep + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
@@ -1,27 +1,30 @@
 package com.rehabfit.service;
 
-import com.theokanning.openai.completion.chat.ChatCompletionRequest;
-import com.theokanning.openai.completion.chat.ChatCompletionResult;
-import com.theokanning.openai.completion.chat.ChatCompletionChunk;
-import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.service.OpenAiService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import com.rehabfit.security.JWTUtil;
-import com.rehabfit.repository.UserRepository;
-import com.rehabfit.model.User;
-import com.rehabfit.model.Progress;
-import com.rehabfit.repository.ProgressRepository;
+import com.rehabfit.security.CurrentUserResolver;
+import com.rehabfit.dto.UserProfile;
+import com.rehabfit.repository.IndexFingerprintRepository;
 import java.util.stream.Collectors;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import java.io.IOException;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.rehabfit.config.RequestEndpoint;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,78 +33,114 @@ import org.slf4j.LoggerFactory;
 public class RagService {
     private static final Logger log = LoggerFactory.getLogger(RagService.class);
 
-    @Value("${pinecone.api.key}")
-    private String pineconeApiKey;
+    // Thread-safe once configured; one instance avoids rebuilding Jackson's caches per LLM reply
+    private static final ObjectMapper LLM_JSON = new ObjectMapper();
 
-    @Value("${pinecone.environment}")
-    private String pineconeEnv;
+    private static final String RAG_SYSTEM_PROMPT = "You are a helpful rehab assistant. Use the provided context to answer.";
 
-    @Value("${pinecone.index}")
-    private String pineconeIndex;
+    private static final String CHAT_SYSTEM_PROMPT = "You are a helpful rehab assistant speaking directly to the user. Use the provided context about the user to personalize your responses. Always respond in second person (using 'you/your'). Format your responses using markdown for better readability. Use:\n- **bold** for emphasis\n- Lists for steps or points\n- ## Headers for sections\n- `code blocks` for exercises or specific terms";
 
-    @Value("${pinecone.project}")
-    private String pineconeProject;
+    @Autowired
+    private CurrentUserResolver currentUser;
 
-    @Value("${openai.api.key}")
-    private String openAiApiKey;
+    @Autowired
+    private VectorStore vectorStore;
 
     @Autowired
-    private JWTUtil jwtUtil;
+    private IndexOutboxService indexOutbox;
 
-    @Value("${youtube.api.key}")
-    private String youtubeApiKey;
+    @Autowired
+    private IndexFingerprintRepository fingerprintRepository;
 
     @Value("${embedding.service.url:http://localhost:5005}")
     private String embeddingServiceUrl;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserProfileCache profiles;
+
+    @Autowired
+    private ProgressService progressService;
+
+    @Autowired
+    private ProgressRollupService progressRollups;
+
+    @Value("${dashboard.progress.window:30}")
+    private int progressWindow;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private EmbeddingBatcher embeddingBatcher;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private UserContextVersionService contextVersions;
+
+    @Autowired
+    private YouTubeGateway youTubeGateway;
+
+    @Autowired
+    private StageMetrics metrics;
 
     @Autowired
-    private ProgressRepository progressRepository;
+    @Qualifier("dashboardExecutor")
+    private ThreadPoolTaskExecutor dashboardExecutor;
 
-    // Extract userId from Authorization header (JWT)
+    @Value("${chat.stream.flush-ms:50}")
+    private long streamFlushMs;
+
+    @Value("${chat.stream.flush-chars:256}")
+    private int streamFlushChars;
+
+    @Value("${dashboard.budget-ms:25000}")
+    private long dashboardBudgetMs;
+
+    @Value("${dashboard.stage.context-timeout-ms:3000}")
+    private long contextTimeoutMs;
+
+    @Value("${dashboard.stage.llm-timeout-ms:20000}")
+    private long llmTimeoutMs;
+
+    @Value("${dashboard.stage.youtube-timeout-ms:3000}")
+    private long youtubeTimeoutMs;
+
+    // Extract userId from Authorization header (JWT); the id is a token claim, so no DB lookup
     public String getUserIdFromAuthHeader(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            throw new RuntimeException("Missing or invalid Authorization header");
-        }
-        String token = authHeader.substring(7); // Remove "Bearer "
-        String email = jwtUtil.validateTokenAndGetEmail(token);
-        if (email == null) {
-            throw new RuntimeException("Invalid token");
-        }
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        // Convert userId to String if it's a Long
-        return user.getId().toString();
+        return currentUser.userId(authHeader);
     }
 
     // Personalized answer: only uses context for this user
     public Map<String, Object> answerWithRagAndVideos(String userId, String question) {
         try {
-            List<Double> embedding = getHuggingFaceEmbedding(question);
-            String context = queryPinecone(userId, embedding);
-
-            // Optionally fetch from DB for latest info
-            User user = userRepository.findById(Long.valueOf(userId)).orElse(null);
-            StringBuilder profileContext = new StringBuilder();
-            if (user != null) {
-                profileContext.append("User Profile:\n");
-                profileContext.append("Name: ").append(user.getName()).append("\n");
-                profileContext.append("Injury Type: ").append(user.getInjuryType()).append("\n");
-                profileContext.append("Fitness Goal: ").append(user.getFitnessGoal()).append("\n\n");
+            float[] embedding = getHuggingFaceEmbedding(question);
+            String contextVersion = contextVersion(userId);
+            Map<String, Object> cached = answerCache.lookup(userId, SemanticAnswerCache.Kind.RAG, contextVersion, embedding);
+            if (cached != null) {
+                return cached;
             }
+            String context = queryContext(userId, embedding);
 
-            String fullContext = profileContext.toString() + context;
-            String llmRawResponse = callOpenAI(question, fullContext);
+            // Optionally fetch from DB for latest info
+            UserProfile user = findProfile(userId);
+            String fullContext = ragProfileContext(user) + context;
+            LlmGateway.Completion completion = metrics.time("llm.complete",
+                () -> llmGateway.completeWithUsage(RAG_SYSTEM_PROMPT, fullContext));
+            String llmRawResponse = completion.content();
 
-            ObjectMapper mapper = new ObjectMapper();
             Map<String, Object> llmResponse;
             try {
-                llmResponse = mapper.readValue(llmRawResponse, Map.class);
+                llmResponse = LLM_JSON.readValue(llmRawResponse, Map.class);
             } catch (Exception e) {
                 // fallback if LLM didn't return JSON
-                return Map.of("answer", llmRawResponse);
+                Map<String, Object> fallback = Map.of("answer", llmRawResponse);
+                answerCache.put(userId, SemanticAnswerCache.Kind.RAG, contextVersion, embedding, fallback, completion.totalTokens());
+                return fallback;
             }
 
             // Extract keywords from LLM's recommended videos
@@ -110,7 +149,7 @@ public class RagService {
             if (llmVideos != null) {
                 for (Map<String, String> vid : llmVideos) {
                     String keyword = vid.get("title");
-                    List<Map<String, String>> urls = getYouTubeVideos(keyword, youtubeApiKey, 0); // get real YouTube links
+                    List<Map<String, String>> urls = getYouTubeVideos(keyword, 0); // get real YouTube links
                     for (Map<String, String> url : urls) {
                         videos.add(Map.of("title", keyword, "url", url.get("url")));
                     }
@@ -120,7 +159,7 @@ public class RagService {
             if (!videos.isEmpty()) {
                 Map<String, Object> metadata = new HashMap<>();
                 metadata.put("type", "recommendation");
-                // Only store URLs as a list of strings for Pinecone metadata
+                // Only store URLs as a list of strings in vector metadata
                 List<String> videoUrls = videos.stream()
                         .map(v -> v.get("url"))
                         .filter(Objects::nonNull)
@@ -129,54 +168,44 @@ public class RagService {
                 metadata.put("text", "Recommended videos for: " + question);
 
                 String docId = "recommendations-" + userId + "-" + UUID.randomUUID();
-                List<Double> recEmbedding = getHuggingFaceEmbedding(question);
-                upsertToPinecone(userId, docId, question, recEmbedding, metadata);
+                indexOutbox.enqueue(userId, docId, question, metadata);
             }
 
             Map<String, Object> response = new HashMap<>();
             response.put("answer", llmResponse.get("answer"));
             response.put("videos", videos);
+            response = Collections.unmodifiableMap(response);
+            answerCache.put(userId, SemanticAnswerCache.Kind.RAG, contextVersion, embedding, response, completion.totalTokens());
             return response;
         } catch (Exception e) {
-            e.printStackTrace(); // This prints the error to the logs
-            log.error("Error in answerWithRagAndVideos", e); // If using a logger
+            log.error("Error in answerWithRagAndVideos", e);
             return Map.of("answer", "Sorry, I couldn't process your request right now.");
         }
     }
 
     // Streaming version of answerWithRagAndVideos
-    public void answerWithRagAndVideosStreaming(String userId, String question, SseEmitter emitter) {
+    public void answerWithRagAndVideosStreaming(String userId, String question, SseStreamRegistry.StreamHandle stream) {
         try {
-            List<Double> embedding = getHuggingFaceEmbedding(question);
-            String context = queryPinecone(userId, embedding);
-
-            // Optionally fetch from DB for latest info
-            User user = userRepository.findById(Long.valueOf(userId)).orElse(null);
-            StringBuilder profileContext = new StringBuilder();
-            if (user != null) {
-                profileContext.append("You are assisting ").append(user.getName()).append(".\n");
-                if (user.getInjuryType() != null && !user.getInjuryType().isEmpty()) {
-                    profileContext.append("They have a ").append(user.getInjuryType()).append(" injury.\n");
-                }
-                if (user.getInjuryDescription() != null && !user.getInjuryDescription().isEmpty()) {
-                    profileContext.append("Injury details: ").append(user.getInjuryDescription()).append(".\n");
-                }
-                if (user.getFitnessGoal() != null && !user.getFitnessGoal().isEmpty()) {
-                    profileContext.append("Their fitness goal is ").append(user.getFitnessGoal()).append(".\n");
-                }
-                profileContext.append("\nPrevious conversation context:\n");
+            float[] embedding = getHuggingFaceEmbedding(question);
+            CacheSlot slot = new CacheSlot(userId, contextVersion(userId), embedding);
+            String cached = answerCache.lookup(userId, SemanticAnswerCache.Kind.CHAT, slot.contextVersion(), embedding);
+            if (cached != null) {
+                replayCachedAnswer(cached, stream);
+                return;
             }
+            String context = queryContext(userId, embedding);
 
-            String fullContext = profileContext.toString() + context;
+            // Optionally fetch from DB for latest info
+            UserProfile user = findProfile(userId);
+            String fullContext = chatProfileContext(user) + context;
             
             // Stream the response
-            callOpenAIStreaming(question, fullContext, emitter);
+            callOpenAIStreaming(question, fullContext, stream, slot);
             
         } catch (Exception e) {
-            e.printStackTrace();
             log.error("Error in answerWithRagAndVideosStreaming", e);
             try {
-                emitter.send(SseEmitter.event()
+                stream.send(SseEmitter.event()
                     .name("error")
                     .data("Sorry, I couldn't process your request right now."));
             } catch (IOException ioException) {
@@ -185,33 +214,77 @@ public class RagService {
         }
     }
 
+    /**
+     * Reactive variant of {@link #answerWithRagAndVideosStreaming}: retrieval is chained on
+     * futures and the LLM tokens are pulled one at a time as each frame is written, so no
+     * thread is parked on the network for the life of the stream. The profile lookup is the one
+     * blocking step (JDBC); it runs as a short task on the shared dashboard pool. Writes to the
+     * client are handed to the stream writers, so a slow reader doesn't hold an I/O thread.
+     */
+    public void answerWithRagReactive(String userId, String question, SseStreamRegistry.StreamHandle stream) {
+        // Later stages run on whichever thread completed the previous one
+        String endpoint = RequestEndpoint.current();
+        CompletableFuture<float[]> embedded = metrics.timeAsync("embedding",
+                () -> embeddingCache.getAsync(question, embeddingBatcher::submit))
+            .exceptionally(e -> {
+                log.warn("Embedding service unavailable: {}", e.getMessage());
+                return new float[384];
+            });
+        CompletableFuture<String> version = CompletableFuture.supplyAsync(
+            () -> contextVersion(userId), dashboardExecutor);
+
+        embedded.thenCombine(version, (embedding, v) -> new CacheSlot(userId, v, embedding))
+            .thenCompose(slot -> {
+                String cached = answerCache.lookup(userId, SemanticAnswerCache.Kind.CHAT, slot.contextVersion(), slot.embedding());
+                if (cached != null) {
+                    stream.write(() -> {
+                        replayCachedAnswer(cached, stream);
+                        stream.complete();
+                    });
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<String> retrieved = metrics.<List<VectorStore.VectorMatch>>timeAsync("vector.query",
+                        () -> vectorStore.queryAsync(userId, slot.embedding(), 5))
+                    .thenApply(RagService::joinTexts)
+                    .exceptionally(e -> {
+                        log.warn("Context retrieval failed for user {}: {}", userId, e.getMessage());
+                        return "";
+                    });
+                CompletableFuture<UserProfile> user = CompletableFuture.supplyAsync(
+                    () -> findProfile(userId), dashboardExecutor);
+                return retrieved.thenCombine(user, (context, u) -> chatProfileContext(u) + context)
+                    .thenAccept(fullContext -> streamCompletionReactive(question, fullContext, stream, slot, endpoint));
+            })
+            .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    log.error("Error in answerWithRagReactive", error);
+                    stream.write(() -> {
+                        sendQuietly(stream, SseEmitter.event().name("error").data("Sorry, I couldn't process your request right now."));
+                        stream.complete();
+                    });
+                }
+            });
+    }
+
     // NON-STREAMING version - returns complete response at once
     public String answerWithRagNonStreaming(String userId, String question) {
         try {
-            List<Double> embedding = getHuggingFaceEmbedding(question);
-            String context = queryPinecone(userId, embedding);
-
-            // Fetch user info
-            User user = userRepository.findById(Long.valueOf(userId)).orElse(null);
-            StringBuilder profileContext = new StringBuilder();
-            if (user != null) {
-                profileContext.append("You are assisting ").append(user.getName()).append(".\n");
-                if (user.getInjuryType() != null && !user.getInjuryType().isEmpty()) {
-                    profileContext.append("They have a ").append(user.getInjuryType()).append(" injury.\n");
-                }
-                if (user.getInjuryDescription() != null && !user.getInjuryDescription().isEmpty()) {
-                    profileContext.append("Injury details: ").append(user.getInjuryDescription()).append(".\n");
-                }
-                if (user.getFitnessGoal() != null && !user.getFitnessGoal().isEmpty()) {
-                    profileContext.append("Their fitness goal is ").append(user.getFitnessGoal()).append(".\n");
-                }
-                profileContext.append("\nPrevious conversation context:\n");
+            float[] embedding = getHuggingFaceEmbedding(question);
+            String contextVersion = contextVersion(userId);
+            String cached = answerCache.lookup(userId, SemanticAnswerCache.Kind.CHAT, contextVersion, embedding);
+            if (cached != null) {
+                return cached;
             }
+            String context = queryContext(userId, embedding);
 
-            String fullContext = profileContext.toString() + context;
+            // Fetch user info
+            UserProfile user = findProfile(userId);
+            String fullContext = chatProfileContext(user) + context;
             
             // Call OpenAI without streaming
-            return callOpenAINonStreaming(question, fullContext);
+            LlmGateway.Completion completion = callOpenAINonStreaming(question, fullContext);
+            answerCache.put(userId, SemanticAnswerCache.Kind.CHAT, contextVersion, embedding, completion.content(), completion.totalTokens());
+            return completion.content();
             
         } catch (Exception e) {
             log.error("Error in answerWithRagNonStreaming", e);
@@ -219,459 +292,508 @@ public class RagService {
         }
     }
 
-    // Use HuggingFace all-MiniLM-L6-v2 embedding via Railway Python service
-    public List<Double> getHuggingFaceEmbedding(String text) {
+    // Use HuggingFace all-MiniLM-L6-v2 embedding via Railway Python service.
+    // Results are cached, so repeated texts (profile strings, dashboard prompt) skip the network hop,
+    // and cache misses are coalesced into batched /embed/batch calls by the EmbeddingBatcher.
+    public float[] getHuggingFaceEmbedding(String text) {
+        Timer.Sample sample = metrics.start();
         try {
-            RestTemplate restTemplate = new RestTemplate();
-            // Use configurable embedding service URL
-            String url = embeddingServiceUrl + "/embed";
-            Map<String, String> request = Map.of("text", text);
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, request, Map.class);
-            List<Double> embedding = (List<Double>) response.getBody().get("embedding");
+            float[] embedding = embeddingCache.getAsync(text, embeddingBatcher::submit).join();
+            metrics.stop(sample, "embedding", RequestEndpoint.current(), StageMetrics.SUCCESS);
             return embedding;
         } catch (Exception e) {
             // Embedding service unavailable - return dummy embedding or use fallback
-            System.err.println("Embedding service unavailable: " + e.getMessage());
+            metrics.stop(sample, "embedding", RequestEndpoint.current(), StageMetrics.FALLBACK);
+            log.warn("Embedding service unavailable: {}", e.getMessage());
             // Return a dummy 384-dimensional embedding (all-MiniLM-L6-v2 dimension)
-            List<Double> dummyEmbedding = new ArrayList<>();
-            for (int i = 0; i < 384; i++) {
-                dummyEmbedding.add(0.0);
-            }
-            return dummyEmbedding;
-        }
-    }
-
-    public void deleteAllFromPinecone() {
-        String url = String.format("https://%s-%s.svc.%s.pinecone.io/vectors/delete", pineconeIndex, pineconeProject, pineconeEnv);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Api-Key", pineconeApiKey);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("deleteAll", true);
-
-        RestTemplate restTemplate = new RestTemplate();
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-        restTemplate.postForEntity(url, entity, Map.class);
-    }
-
-    // Query Pinecone for this user's data only
-    private String queryPinecone(String userId, List<Double> embedding) {
-        List<Float> floatEmbedding = new ArrayList<>();
-        for (Double d : embedding) floatEmbedding.add(d.floatValue());
-
-        String url = String.format("https://%s-%s.svc.%s.pinecone.io/query", pineconeIndex, pineconeProject, pineconeEnv);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Api-Key", pineconeApiKey);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        Map<String, Object> filter = new HashMap<>();
-        filter.put("userId", userId);
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("vector", floatEmbedding);
-        body.put("topK", 5);
-        body.put("includeMetadata", true);
-        body.put("filter", filter);
-
-        RestTemplate restTemplate = new RestTemplate();
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-        ResponseEntity<Map> response = restTemplate.postForEntity(url, entity, Map.class);
-
-        StringBuilder sb = new StringBuilder();
-        if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-            List<Map<String, Object>> matches = (List<Map<String, Object>>) response.getBody().get("matches");
-            if (matches != null) {
-                for (Map<String, Object> match : matches) {
-                    Map<String, Object> metadata = (Map<String, Object>) match.get("metadata");
-                    if (metadata != null && metadata.containsKey("text")) {
-                        sb.append(metadata.get("text")).append("\n");
-                    }
-                }
-            }
+            return new float[384];
         }
-        return sb.toString();
     }
 
     /**
-     * Upserts a document into Pinecone for a specific user.
-     * @param userId The user to associate this data with
-     * @param id Unique ID for the vector/document
-     * @param text The text to store as metadata
-     * @param embedding The embedding vector (List<Double>)
+     * Embeds many texts at once. All cache misses are queued together, so they leave
+     * in as few batched calls as the batcher allows.
      */
-    public void upsertToPinecone(String userId, String id, String text, List<Double> embedding, Map<String, Object> metadata) {
-        try {
-            List<Float> floatEmbedding = new ArrayList<>();
-            for (Double d : embedding) floatEmbedding.add(d.floatValue());
-
-            // Check if embedding contains only zeros (dummy embedding from unavailable service)
-            boolean allZeros = floatEmbedding.stream().allMatch(f -> f == 0.0f);
-            if (allZeros) {
-                System.err.println("Skipping Pinecone upsert - embedding service unavailable (all zeros)");
-                return;
+    public List<float[]> getHuggingFaceEmbeddings(List<String> texts) {
+        Timer.Sample sample = metrics.start();
+        boolean degraded = false;
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            futures.add(embeddingCache.getAsync(text, embeddingBatcher::submit));
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (var future : futures) {
+            try {
+                vectors.add(future.join());
+            } catch (Exception e) {
+                log.warn("Embedding service unavailable: {}", e.getMessage());
+                vectors.add(new float[384]);
+                degraded = true;
             }
-
-            String url = String.format("https://%s-%s.svc.%s.pinecone.io/vectors/upsert", pineconeIndex, pineconeProject, pineconeEnv);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Api-Key", pineconeApiKey);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            Map<String, Object> vector = new HashMap<>();
-            vector.put("id", id);
-            vector.put("values", floatEmbedding);
-
-            // Fix: ensure metadata is not null before using it
-            if (metadata == null) metadata = new HashMap<>();
-            metadata.put("text", text);
-            metadata.put("userId", userId); // associate with user
-            vector.put("metadata", metadata);
-
-            Map<String, Object> body = new HashMap<>();
-            body.put("vectors", List.of(vector));
-
-            RestTemplate restTemplate = new RestTemplate();
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
-            restTemplate.postForEntity(url, entity, Map.class);
-        } catch (Exception e) {
-            System.err.println("Failed to upsert to Pinecone: " + e.getMessage());
-            // Continue without Pinecone - app still works
         }
+        metrics.stop(sample, "embedding.batch", RequestEndpoint.current(), degraded ? StageMetrics.FALLBACK : StageMetrics.SUCCESS);
+        return vectors;
     }
 
-    /**
-     * Upsert the user's name for personalization.
-     * Call this after registration or login.
-     */
-    public void upsertUserProfile(String userId, String userName, String injuryType, String fitnessGoal) {
-        String docId = "user-profile-" + userId;
-        String text = "Name: " + userName + ". Injury Type: " + injuryType + ". Fitness Goal: " + fitnessGoal + ".";
-        List<Double> embedding = getHuggingFaceEmbedding(text);
-        upsertToPinecone(userId, docId, text, embedding, null);
+    public void deleteAllVectors() {
+        vectorStore.deleteAll();
+        // Nothing is indexed any more, so nothing may be skipped as unchanged
+        fingerprintRepository.deleteAllInBatch();
     }
 
-    public void upsertProgressToPinecone(String userId, Progress progress) {
-        String docId = "progress-" + userId + "-" + progress.getId();
-        String text = "Date: " + progress.getDate() + ", Pain: " + progress.getPainLevel() +
-                      ", Mobility: " + progress.getMobility() + ", Strength: " + progress.getStrength();
-        List<Double> embedding = getHuggingFaceEmbedding(text);
-        Map<String, Object> metadata = new HashMap<>();
-        metadata.put("userId", userId);
-        metadata.put("type", "progress");
-        metadata.put("date", progress.getDate().toString());
-        upsertToPinecone(userId, docId, text, embedding, metadata);
+    // Whole-log aggregates (when the window doesn't cover the log) followed by the recent entries
+    static String progressSummary(ProgressRollupService.Totals totals, List<Map<String, Object>> progressData) {
+        StringBuilder progressSummary = new StringBuilder();
+        if (totals.entries() > progressData.size()) {
+            progressSummary.append(String.format(
+                "Overall (%d entries since %s): avg Pain %.1f, avg Mobility %.1f, avg Strength %.1f\nMost recent entries:\n",
+                totals.entries(), totals.firstMonth(),
+                totals.avgPain(), totals.avgMobility(), totals.avgStrength()));
+        }
+        for (Map<String, Object> entry : progressData) {
+            progressSummary.append(String.format(
+                "Date: %s, Pain: %s, Mobility: %s, Strength: %s\n",
+                entry.get("date"), entry.get("painLevel"), entry.get("mobility"), entry.get("strength")
+            ));
+        }
+        return progressSummary.toString();
     }
 
-    @SuppressWarnings("unchecked")
-public List<Map<String, String>> getYouTubeVideos(String query, String apiKey, int maxResults) {
-    // Default to 5 results if maxResults is 0 or invalid
-    if (maxResults <= 0) maxResults = 5;
+    static String dashboardPrompt(UserProfile user, String progressSummary, String vectorContext) {
+        return "You are a rehab assistant. Given the following user profile, progress logs, and previous recommendations, respond ONLY with a JSON object with these keys:\n" +
+            "- estimatedRecovery: string\n" +
+            "- dietPlan: array of strings\n" +
+            "- llmSummary: array of strings (summarize recent progress and give actionable advice)\n" +
+            "- videos: array of objects with 'title' (string) for recommended exercise video topics\n" +
+            "User Profile:\n" +
+            (user != null ? String.format("Name: %s, Injury Type: %s, Fitness Goal: %s\n", user.name(), user.injuryType(), user.fitnessGoal()) : "") +
+            "Progress Logs:\n" + (!progressSummary.isEmpty() ? progressSummary : "No progress yet.\n") +
+            "Previous Recommendations:\n" + vectorContext + "\n" +
+            "Example:\n" +
+            "{ \"estimatedRecovery\": \"4 weeks\", \"dietPlan\": [\"Eat more protein\", \"Stay hydrated\"], \"llmSummary\": [\"Mobility improved this week. Keep stretching!\", \"Try to reduce pain with ice therapy.\"], \"videos\": [{\"title\": \"ankle rehab exercises\"}, {\"title\": \"mobility stretches\"}] }\n" +
+            "If there is no user data, return a generic JSON object with default advice. Return ONLY valid JSON. Do not include any explanation or extra text.";
+    }
 
-    String apiUrl = "https://www.googleapis.com/youtube/v3/search"
-        + "?part=snippet"
-        + "&maxResults=" + maxResults
-        + "&q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
-        + "&type=video"
-        + "&key=" + apiKey;
+    // Prompt preamble describing the user for RAG answers
+    static String ragProfileContext(UserProfile user) {
+        if (user == null) return "";
+        StringBuilder profileContext = new StringBuilder();
+        profileContext.append("User Profile:\n");
+        profileContext.append("Name: ").append(user.name()).append("\n");
+        profileContext.append("Injury Type: ").append(user.injuryType()).append("\n");
+        profileContext.append("Fitness Goal: ").append(user.fitnessGoal()).append("\n\n");
+        return profileContext.toString();
+    }
 
-    RestTemplate restTemplate = new RestTemplate();
-    List<Map<String, String>> videos = new ArrayList<>();
+    // Prompt preamble describing the user for chat answers
+    static String chatProfileContext(UserProfile user) {
+        if (user == null) return "";
+        StringBuilder profileContext = new StringBuilder();
+        profileContext.append("You are assisting ").append(user.name()).append(".\n");
+        if (user.injuryType() != null && !user.injuryType().isEmpty()) {
+            profileContext.append("They have a ").append(user.injuryType()).append(" injury.\n");
+        }
+        if (user.injuryDescription() != null && !user.injuryDescription().isEmpty()) {
+            profileContext.append("Injury details: ").append(user.injuryDescription()).append(".\n");
+        }
+        if (user.fitnessGoal() != null && !user.fitnessGoal().isEmpty()) {
+            profileContext.append("Their fitness goal is ").append(user.fitnessGoal()).append(".\n");
+        }
+        profileContext.append("\nPrevious conversation context:\n");
+        return profileContext.toString();
+    }
 
-    try {
-        System.out.println("YouTube API call: " + apiUrl.replace(apiKey, "[API_KEY]"));
-        Map<String, Object> response = restTemplate.getForObject(apiUrl, Map.class);
+    // Retrieve context from this user's data only
+    private String queryContext(String userId, float[] embedding) {
+        return joinTexts(metrics.time("vector.query", () -> vectorStore.query(userId, embedding, 5)));
+    }
 
-        if (response == null) {
-            System.out.println("YouTube API returned null response");
-            return videos;
-        }
+    private String contextVersion(String userId) {
+        return metrics.time("db.context-version", () -> contextVersions.versionFor(userId));
+    }
 
-        // Check for API errors
-        if (response.containsKey("error")) {
-            Map<String, Object> error = (Map<String, Object>) response.get("error");
-            System.out.println("YouTube API error: " + error);
-            
-            // Check if it's a quota exceeded error
-            Map<String, Object> errorDetails = (Map<String, Object>) error.get("errors");
-            if (errorDetails != null && !errorDetails.isEmpty()) {
-                Map<String, Object> firstError = (Map<String, Object>) ((List) errorDetails).get(0);
-                String reason = (String) firstError.get("reason");
-                if ("quotaExceeded".equals(reason)) {
-                    // Return a special video entry indicating quota exceeded
-                    videos.add(Map.of("title", "YouTube API Quota Exceeded", "url", ""));
-                    return videos;
-                }
-            }
-            
-            return videos;
-        }
+    private UserProfile findProfile(String userId) {
+        return metrics.time("db.profile", () -> profiles.findById(userId).orElse(null));
+    }
 
-        List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("items");
-        if (items != null && !items.isEmpty()) {
-            System.out.println("YouTube API returned " + items.size() + " items");
-            for (Map<String, Object> item : items) {
-                Map<String, Object> id = (Map<String, Object>) item.get("id");
-                Map<String, Object> snippet = (Map<String, Object>) item.get("snippet");
-                String videoId = id != null ? (String) id.get("videoId") : null;
-                String title = snippet != null ? (String) snippet.get("title") : query;
-                if (videoId != null && !videoId.isEmpty()) {
-                    videos.add(Map.of("title", title, "url", "https://www.youtube.com/watch?v=" + videoId));
-                }
-            }
-        } else {
-            System.out.println("YouTube API returned no items");
-        }
-    } catch (Exception e) {
-        System.out.println("YouTube API error: " + e.getMessage());
-        
-        // Check if it's an HTTP error (like 403 quota exceeded)
-        if (e instanceof org.springframework.web.client.HttpClientErrorException) {
-            org.springframework.web.client.HttpClientErrorException httpError = (org.springframework.web.client.HttpClientErrorException) e;
-            System.out.println("HTTP Error Status: " + httpError.getStatusCode());
-            System.out.println("HTTP Error Response: " + httpError.getResponseBodyAsString());
-            
-            // Check if it's quota exceeded
-            if (httpError.getStatusCode().value() == 403 && 
-                httpError.getResponseBodyAsString().contains("quotaExceeded")) {
-                videos.add(Map.of("title", "YouTube API Quota Exceeded", "url", ""));
-                return videos;
+    private static String joinTexts(List<VectorStore.VectorMatch> matches) {
+        StringBuilder sb = new StringBuilder();
+        for (VectorStore.VectorMatch match : matches) {
+            Object text = match.metadata().get("text");
+            if (text != null) {
+                sb.append(text).append("\n");
             }
         }
-        
-        e.printStackTrace();
+        return sb.toString();
     }
 
-    System.out.println("Returning " + videos.size() + " videos for query: " + query);
-    return videos;
-}
+    // YouTube search goes through the gateway for caching, request collapsing and quota budgeting
+    public List<Map<String, String>> getYouTubeVideos(String query, int maxResults) {
+        return metrics.time("youtube", () -> youTubeGateway.search(query, maxResults));
+    }
 
     // --- FIX: callOpenAI should accept the prompt directly ---
     private String callOpenAI(String question, String prompt) {
-        OpenAiService service = new OpenAiService(openAiApiKey);
-
-        ChatMessage systemMessage = new ChatMessage("system", "You are a helpful rehab assistant. Use the provided context to answer.");
-        ChatMessage userMessage = new ChatMessage("user", prompt);
-
-        ChatCompletionRequest request = ChatCompletionRequest.builder()
-            .model("gpt-3.5-turbo")
-            .messages(List.of(systemMessage, userMessage))
-            .maxTokens(512)
-            .temperature(0.2)
-            .build();
-
-        ChatCompletionResult result = service.createChatCompletion(request);
-        return result.getChoices().get(0).getMessage().getContent();
+        return metrics.time("llm.complete", () -> llmGateway.complete(RAG_SYSTEM_PROMPT, prompt));
     }
 
-    // Streaming version of callOpenAI
-    private void callOpenAIStreaming(String question, String prompt, SseEmitter emitter) {
-        OpenAiService service = new OpenAiService(openAiApiKey);
-
-        ChatMessage systemMessage = new ChatMessage("system", "You are a helpful rehab assistant speaking directly to the user. Use the provided context about the user to personalize your responses. Always respond in second person (using 'you/your'). Format your responses using markdown for better readability. Use:\n- **bold** for emphasis\n- Lists for steps or points\n- ## Headers for sections\n- `code blocks` for exercises or specific terms");
-        ChatMessage userMessage = new ChatMessage("user", prompt + "\n\nUser's question: " + question);
-
-        ChatCompletionRequest request = ChatCompletionRequest.builder()
-            .model("gpt-3.5-turbo")
-            .messages(List.of(systemMessage, userMessage))
-            .maxTokens(512)
-            .temperature(0.2)
-            .stream(true)
-            .build();
-
+    // Streaming version of callOpenAI. Tokens are coalesced into frames to keep writes and per-token work down.
+    private void callOpenAIStreaming(String question, String prompt, SseStreamRegistry.StreamHandle stream, CacheSlot slot) {
+        String userPrompt = prompt + "\n\nUser's question: " + question;
+        StringBuilder answer = new StringBuilder();
+        TokenCoalescer coalescer = new TokenCoalescer(frame -> {
+            answer.append(frame);
+            stream.send(SseEmitter.event().name("message").data(frame));
+        }, stream::schedule, streamFlushMs, streamFlushChars);
+        Timer.Sample sample = metrics.start();
+        String outcome = StageMetrics.ERROR;
         try {
-            service.streamChatCompletion(request)
-                .doOnError(error -> {
-                    log.error("Error streaming chat completion", error);
-                    try {
-                        emitter.send(SseEmitter.event()
-                            .name("error")
-                            .data("Error processing request"));
-                        emitter.complete();
-                    } catch (IOException e) {
-                        log.error("Error sending error event", e);
-                    }
-                })
-                .doOnComplete(() -> {
-                    try {
-                        emitter.send(SseEmitter.event()
-                            .name("done")
-                            .data("[DONE]"));
-                    } catch (IOException e) {
-                        log.error("Error sending completion event", e);
-                    }
-                })
+            // Bound to the stream, so a client disconnect or timeout cancels the LLM call
+            stream.bind(llmGateway.stream(CHAT_SYSTEM_PROMPT, userPrompt))
                 .blockingForEach(chunk -> {
-                    try {
-                        if (chunk.getChoices() != null && !chunk.getChoices().isEmpty()) {
-                            var delta = chunk.getChoices().get(0).getMessage();
-                            if (delta != null && delta.getContent() != null) {
-                                String content = delta.getContent();
-                                
-                                // Add space before content if it's a word (not punctuation/markdown)
-                                // This fixes OpenAI streaming which doesn't include spaces between tokens
-                                if (content.length() > 0 && !content.matches("^[\\s.,!?;:\\-*#`\\[\\]()_~\\n].*")) {
-                                    content = " " + content;
-                                }
-                                
-                                log.info("Sending chunk: [{}]", content); // Debug logging
-                                emitter.send(SseEmitter.event()
-                                    .name("message")
-                                    .data(content));
-                            }
+                    if (chunk.getChoices() != null && !chunk.getChoices().isEmpty()) {
+                        var delta = chunk.getChoices().get(0).getMessage();
+                        if (delta != null) {
+                            coalescer.append(delta.getContent());
                         }
-                    } catch (IOException e) {
-                        log.error("Error sending chunk", e);
-                        throw new RuntimeException(e);
                     }
                 });
+            coalescer.finish();
+            stream.send(SseEmitter.event()
+                .name("done")
+                .data("[DONE]"));
+            cacheStreamedAnswer(slot, stream, answer, userPrompt, coalescer.summary());
+            outcome = StageMetrics.SUCCESS;
         } catch (Exception e) {
-            log.error("Error in streaming completion", e);
+            log.error("Error streaming chat completion", e);
             try {
-                emitter.send(SseEmitter.event()
+                stream.send(SseEmitter.event()
                     .name("error")
-                    .data("Error during streaming"));
-                emitter.complete();
+                    .data("Error processing request"));
             } catch (IOException ioException) {
-                log.error("Error sending error event", ioException);
+                log.debug("Could not send error event: {}", ioException.getMessage());
             }
         } finally {
-            service.shutdownExecutor();
+            TokenCoalescer.Summary summary = coalescer.summary();
+            if (stream.isCancelled()) outcome = StageMetrics.CANCELLED;
+            metrics.stop(sample, "llm.stream", RequestEndpoint.current(), outcome);
+            metrics.recordStream(RequestEndpoint.current(), outcome, summary);
+            stream.recordSummary(summary);
+            log.info("Chat stream {}: {} tokens in {} frames, first token after {} ms, {} ms total",
+                stream.getId(), summary.tokens(), summary.frames(), summary.timeToFirstTokenMs(), summary.durationMs());
         }
     }
 
-    // NON-STREAMING version of callOpenAI
-    private String callOpenAINonStreaming(String question, String prompt) {
-        OpenAiService service = new OpenAiService(openAiApiKey);
+    // Pulls one chunk at a time and asks for the next only after it has been handled
+    private void streamCompletionReactive(String question, String prompt, SseStreamRegistry.StreamHandle stream,
+                                          CacheSlot slot, String endpoint) {
+        String userPrompt = prompt + "\n\nUser's question: " + question;
+        StringBuilder answer = new StringBuilder();
+        TokenCoalescer coalescer = new TokenCoalescer(frame -> {
+            answer.append(frame);
+            stream.send(SseEmitter.event().name("message").data(frame));
+        }, stream::schedule, streamFlushMs, streamFlushChars);
+        Timer.Sample sample = metrics.start();
+        stream.bind(llmGateway.streamNonBlocking(CHAT_SYSTEM_PROMPT, userPrompt))
+            .subscribe(new Subscriber<ChatCompletionChunk>() {
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription = s;
+                    s.request(1);
+                }
 
-        ChatMessage systemMessage = new ChatMessage("system", "You are a helpful rehab assistant speaking directly to the user. Use the provided context about the user to personalize your responses. Always respond in second person (using 'you/your'). Format your responses using markdown for better readability. Use:\n- **bold** for emphasis\n- Lists for steps or points\n- ## Headers for sections\n- `code blocks` for exercises or specific terms");
-        ChatMessage userMessage = new ChatMessage("user", prompt + "\n\nUser's question: " + question);
+                // Chunks arrive on the HTTP client's threads; the writes happen on a stream writer,
+                // and the next chunk is only asked for once this one has been handled
+                @Override
+                public void onNext(ChatCompletionChunk chunk) {
+                    stream.write(() -> {
+                        try {
+                            if (chunk.getChoices() != null && !chunk.getChoices().isEmpty()) {
+                                var delta = chunk.getChoices().get(0).getMessage();
+                                if (delta != null) {
+                                    coalescer.append(delta.getContent());
+                                }
+                            }
+                            subscription.request(1);
+                        } catch (IOException e) {
+                            // Client is gone; the handle is already cancelled
+                            subscription.cancel();
+                            finish(StageMetrics.CANCELLED);
+                        }
+                    });
+                }
 
-        ChatCompletionRequest request = ChatCompletionRequest.builder()
-            .model("gpt-3.5-turbo")
-            .messages(List.of(systemMessage, userMessage))
-            .maxTokens(512)
-            .temperature(0.2)
-            .build();
+                @Override
+                public void onError(Throwable error) {
+                    log.error("Error streaming chat completion", error);
+                    stream.write(() -> {
+                        sendQuietly(stream, SseEmitter.event().name("error").data("Error processing request"));
+                        finish(StageMetrics.ERROR);
+                    });
+                }
 
+                @Override
+                public void onComplete() {
+                    stream.write(() -> {
+                        try {
+                            coalescer.finish();
+                            stream.send(SseEmitter.event().name("done").data("[DONE]"));
+                            cacheStreamedAnswer(slot, stream, answer, userPrompt, coalescer.summary());
+                        } catch (IOException e) {
+                            log.debug("Could not finish chat stream {}: {}", stream.getId(), e.getMessage());
+                        }
+                        finish(stream.isCancelled() ? StageMetrics.CANCELLED : StageMetrics.SUCCESS);
+                    });
+                }
+
+                private void finish(String outcome) {
+                    TokenCoalescer.Summary summary = coalescer.summary();
+                    metrics.stop(sample, "llm.stream", endpoint, outcome);
+                    metrics.recordStream(endpoint, outcome, summary);
+                    stream.recordSummary(summary);
+                    log.info("Chat stream {}: {} tokens in {} frames, first token after {} ms, {} ms total",
+                        stream.getId(), summary.tokens(), summary.frames(), summary.timeToFirstTokenMs(), summary.durationMs());
+                    stream.complete();
+                }
+            });
+    }
+
+    // Only answers that reached the client in full are worth replaying
+    private void cacheStreamedAnswer(CacheSlot slot, SseStreamRegistry.StreamHandle stream, CharSequence answer,
+                                     String userPrompt, TokenCoalescer.Summary summary) {
+        if (stream.isCancelled() || answer.length() == 0) return;
+        // Streams report no usage; each chunk is roughly one completion token
+        long tokens = summary.tokens() + LlmGateway.estimateTokens(CHAT_SYSTEM_PROMPT) + LlmGateway.estimateTokens(userPrompt);
+        answerCache.put(slot.userId(), SemanticAnswerCache.Kind.CHAT, slot.contextVersion(), slot.embedding(), answer.toString(), tokens);
+    }
+
+    // Sends a cached answer as a quick burst of full-size frames
+    private void replayCachedAnswer(String answer, SseStreamRegistry.StreamHandle stream) {
         try {
-            ChatCompletionResult result = service.createChatCompletion(request);
-            return result.getChoices().get(0).getMessage().getContent();
-        } finally {
-            service.shutdownExecutor();
+            int frameChars = Math.max(1, streamFlushChars);
+            for (int i = 0; i < answer.length(); i += frameChars) {
+                stream.send(SseEmitter.event().name("message").data(answer.substring(i, Math.min(answer.length(), i + frameChars))));
+            }
+            stream.send(SseEmitter.event().name("done").data("[DONE]"));
+        } catch (IOException e) {
+            log.debug("Could not replay cached answer on chat stream {}: {}", stream.getId(), e.getMessage());
+        }
+    }
+
+    private static void sendQuietly(SseStreamRegistry.StreamHandle stream, SseEmitter.SseEventBuilder event) {
+        try {
+            stream.send(event);
+        } catch (IOException e) {
+            log.debug("Could not send event on chat stream {}: {}", stream.getId(), e.getMessage());
         }
     }
 
+    // NON-STREAMING version of callOpenAI
+    private LlmGateway.Completion callOpenAINonStreaming(String question, String prompt) {
+        return metrics.time("llm.complete",
+            () -> llmGateway.completeWithUsage(CHAT_SYSTEM_PROMPT, prompt + "\n\nUser's question: " + question));
+    }
+
+    // Where a generated chat answer goes in the semantic cache
+    private record CacheSlot(String userId, String contextVersion, float[] embedding) {}
+
     // --- DASHBOARD DATA ---
 
-   public Map<String, Object> getDashboardData(String userId) {
-    User user = userRepository.findById(Long.valueOf(userId)).orElse(null);
-    String createdAt = (user != null && user.getCreatedAt() != null) ? user.getCreatedAt().toString() : "";
+    /**
+     * Builds the generated sections of the dashboard: estimatedRecovery, dietPlan, llmSummary
+     * and videos. Independent stages (user, progress, vector context, profile videos) run
+     * concurrently on the dashboard executor, and the LLM-suggested video lookups fan out in
+     * parallel. Optional stages that miss their deadline are dropped; the result then carries
+     * {@code partial=true} and the names of the stages that were skipped.
+     */
+    public Map<String, Object> buildDashboardInsights(String userId) {
+        long deadline = System.currentTimeMillis() + dashboardBudgetMs;
+        List<String> degradedStages = Collections.synchronizedList(new ArrayList<>());
+
+        try (StageScope stages = new StageScope()) {
+            CompletableFuture<UserProfile> userFuture = stages.run(() -> findProfile(userId));
+            CompletableFuture<List<Map<String, Object>>> progressFuture = stages.run(() -> getProgressDataForUser(userId));
+            CompletableFuture<ProgressRollupService.Totals> totalsFuture = stages.run(
+                () -> metrics.time("db.rollups", () -> progressRollups.totals(userId)));
+            // Query the vector store for context
+            CompletableFuture<String> contextFuture = stages.run(
+                () -> queryContext(userId, getHuggingFaceEmbedding("dashboard summary for user")));
+
+            // 1. Videos from user profile, one lookup per keyword in parallel
+            CompletableFuture<List<Map<String, String>>> profileVideosFuture = userFuture.thenCompose(user -> {
+                List<String> keywords = new ArrayList<>();
+                if (user != null) {
+                    if (user.injuryType() != null) keywords.add(user.injuryType() + " rehab exercise");
+                    if (user.fitnessGoal() != null) keywords.add(user.fitnessGoal() + " exercise");
+                }
+                return searchVideosInParallel(stages, keywords, 3); // 3 per keyword
+            });
+
+            UserProfile user = awaitRequired(userFuture, deadline);
+            List<Map<String, Object>> progressData = awaitRequired(progressFuture, deadline);
+            ProgressRollupService.Totals totals = awaitRequired(totalsFuture, deadline);
+
+            // Build a summary of progress for the LLM: whole-log aggregates plus the recent entries
+            String progressSummary = progressSummary(totals, progressData);
+
+            String vectorContext = awaitOptional("context", contextFuture, contextTimeoutMs, deadline, "", degradedStages);
+
+            // Compose prompt for LLM
+            String prompt = dashboardPrompt(user, progressSummary, vectorContext);
+
+            CompletableFuture<String> llmFuture = stages.runInterruptible(
+                () -> callOpenAI("dashboard summary", prompt));
+            String llmRaw = awaitOptional("llm", llmFuture, llmTimeoutMs, deadline, null, degradedStages);
+            log.debug("LLM RAW OUTPUT: {}", llmRaw);
+
+            Map<String, Object> llmData = new HashMap<>();
+            try {
+                llmData = LLM_JSON.readValue(llmRaw, Map.class);
+            } catch (Exception e) {
+                llmData.put("estimatedRecovery", "N/A");
+                llmData.put("dietPlan", List.of());
+                llmData.put("llmSummary", List.of());
+            }
 
-    // Fetch progress data from DB
-    List<Map<String, Object>> progressData = getProgressDataForUser(userId);
+            // 2. Videos from LLM recommendations, looked up in parallel
+            List<String> llmKeywords = new ArrayList<>();
+            if (llmData.get("videos") instanceof List<?> llmVideos) {
+                for (Object vid : llmVideos) {
+                    if (vid instanceof Map<?, ?> vidMap && vidMap.get("title") instanceof String keyword && !keyword.isBlank()) {
+                        llmKeywords.add(keyword);
+                    }
+                }
+            }
+            CompletableFuture<List<Map<String, String>>> llmVideosFuture = searchVideosInParallel(stages, llmKeywords, 2); // 2 per LLM keyword
 
-    // 1. Videos from user profile
-    List<Map<String, String>> videos = new ArrayList<>();
-    if (user != null) {
-        List<String> keywords = new ArrayList<>();
-        if (user.getInjuryType() != null) keywords.add(user.getInjuryType() + " rehab exercise");
-        if (user.getFitnessGoal() != null) keywords.add(user.getFitnessGoal() + " exercise");
+            List<Map<String, String>> videos = new ArrayList<>();
+            videos.addAll(awaitOptional("profileVideos", profileVideosFuture, youtubeTimeoutMs, deadline, List.of(), degradedStages));
+            videos.addAll(awaitOptional("llmVideos", llmVideosFuture, youtubeTimeoutMs, deadline, List.of(), degradedStages));
+            log.debug("Dashboard videos for user {}: {}", userId, videos);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("estimatedRecovery", llmData.getOrDefault("estimatedRecovery", "N/A"));
+            result.put("dietPlan", llmData.getOrDefault("dietPlan", List.of()));
+            result.put("llmSummary", llmData.getOrDefault("llmSummary", List.of()));
+            result.put("videos", videos);
+            result.put("partial", !degradedStages.isEmpty());
+            result.put("degradedStages", List.copyOf(degradedStages));
+            return result;
+        }
+    }
 
+    // Runs one YouTube search per keyword concurrently and concatenates the results in keyword order
+    private CompletableFuture<List<Map<String, String>>> searchVideosInParallel(StageScope stages, List<String> keywords, int perKeyword) {
+        List<CompletableFuture<List<Map<String, String>>>> searches = new ArrayList<>();
         for (String keyword : keywords) {
-            videos.addAll(getYouTubeVideos(keyword, youtubeApiKey, 3)); // 3 per keyword
+            searches.add(stages.runInterruptible(() -> getYouTubeVideos(keyword, perKeyword)));
         }
+        return CompletableFuture.allOf(searches.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<Map<String, String>> all = new ArrayList<>();
+            for (CompletableFuture<List<Map<String, String>>> search : searches) all.addAll(search.join());
+            return all;
+        });
     }
 
-    System.out.println("Dashboard videos for user " + userId + " (profile): " + videos);
+    /**
+     * The tasks started for one dashboard build. Cancelling a stage's future cancels its task, and
+     * closing the scope cancels whatever is still running, so a stage that missed its deadline
+     * stops holding an LLM permit or spending YouTube quota once the response is out. Only stages
+     * started with {@link #runInterruptible} are interrupted; the others (database reads, the
+     * embedding and vector calls) are left to finish, since interrupting a JDBC or pooled HTTP
+     * read can break the connection. Their query and socket timeouts bound them instead.
+     */
+    private final class StageScope implements AutoCloseable {
+        private final List<Future<?>> tasks = new ArrayList<>();
+        private final List<Future<?>> interruptible = new ArrayList<>();
+        private boolean closed;
 
-    // Build a summary of progress for the LLM
-    StringBuilder progressSummary = new StringBuilder();
-    for (Map<String, Object> entry : progressData) {
-        progressSummary.append(String.format(
-            "Date: %s, Pain: %s, Mobility: %s, Strength: %s\n",
-            entry.get("date"), entry.get("painLevel"), entry.get("mobility"), entry.get("strength")
-        ));
-    }
+        <T> CompletableFuture<T> run(Supplier<T> work) {
+            return start(work, false);
+        }
 
-    // Query Pinecone for context
-    List<Double> embedding = getHuggingFaceEmbedding("dashboard summary for user");
-    String pineconeContext = queryPinecone(userId, embedding);
-
-    // Compose prompt for LLM
-    String prompt = "You are a rehab assistant. Given the following user profile, progress logs, and previous recommendations, respond ONLY with a JSON object with these keys:\n" +
-        "- estimatedRecovery: string\n" +
-        "- dietPlan: array of strings\n" +
-        "- llmSummary: array of strings (summarize recent progress and give actionable advice)\n" +
-        "- videos: array of objects with 'title' (string) for recommended exercise video topics\n" +
-        "User Profile:\n" +
-        (user != null ? String.format("Name: %s, Injury Type: %s, Fitness Goal: %s\n", user.getName(), user.getInjuryType(), user.getFitnessGoal()) : "") +
-        "Progress Logs:\n" + (progressSummary.length() > 0 ? progressSummary : "No progress yet.\n") +
-        "Previous Recommendations:\n" + pineconeContext + "\n" +
-        "Example:\n" +
-        "{ \"estimatedRecovery\": \"4 weeks\", \"dietPlan\": [\"Eat more protein\", \"Stay hydrated\"], \"llmSummary\": [\"Mobility improved this week. Keep stretching!\", \"Try to reduce pain with ice therapy.\"], \"videos\": [{\"title\": \"ankle rehab exercises\"}, {\"title\": \"mobility stretches\"}] }\n" +
-        "If there is no user data, return a generic JSON object with default advice. Return ONLY valid JSON. Do not include any explanation or extra text.";
-
-    String llmRaw = callOpenAI("dashboard summary", prompt);
-    System.out.println("LLM RAW OUTPUT: " + llmRaw);
-
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> llmData = new HashMap<>();
-    try {
-        llmData = mapper.readValue(llmRaw, Map.class);
-    } catch (Exception e) {
-        llmData.put("estimatedRecovery", "N/A");
-        llmData.put("dietPlan", List.of());
-        llmData.put("llmSummary", List.of());
-    }
+        // For the LLM and YouTube calls, which give up cleanly when interrupted
+        <T> CompletableFuture<T> runInterruptible(Supplier<T> work) {
+            return start(work, true);
+        }
 
-    // 2. Videos from LLM recommendations
-    if (llmData.containsKey("videos")) {
-        List<Map<String, String>> llmVideos = (List<Map<String, String>>) llmData.get("videos");
-        if (llmVideos != null) {
-            for (Map<String, String> vid : llmVideos) {
-                String keyword = vid.get("title");
-                if (keyword != null && !keyword.isBlank()) {
-                    videos.addAll(getYouTubeVideos(keyword, youtubeApiKey, 2)); // 2 per LLM keyword
+        private <T> CompletableFuture<T> start(Supplier<T> work, boolean mayInterrupt) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            synchronized (this) {
+                if (closed) {
+                    result.cancel(false);
+                    return result;
                 }
             }
+            Future<?> task = dashboardExecutor.submit(() -> {
+                try {
+                    result.complete(work.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) task.cancel(mayInterrupt);
+            });
+            synchronized (this) {
+                if (!closed) {
+                    (mayInterrupt ? interruptible : tasks).add(task);
+                    return result;
+                }
+            }
+            result.cancel(false);
+            return result;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            for (Future<?> task : tasks) task.cancel(false);
+            for (Future<?> task : interruptible) task.cancel(true);
         }
     }
 
-    int recoveryPercentage = calculateRecoveryPercentage(progressData);
-
-    Map<String, Object> result = new HashMap<>();
-    result.put("createdAt", createdAt);
-    result.put("estimatedRecovery", llmData.getOrDefault("estimatedRecovery", "N/A"));
-    result.put("dietPlan", llmData.getOrDefault("dietPlan", List.of()));
-    result.put("llmSummary", llmData.getOrDefault("llmSummary", List.of()));
-    result.put("progressData", progressData);
-    result.put("recoveryPercentage", recoveryPercentage);
-    result.put("videos", videos);
-    return result;
-}
+    // Required stages wait for the whole remaining budget and propagate their failure
+    private <T> T awaitRequired(CompletableFuture<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RuntimeException("Dashboard time budget exceeded", e);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
 
-    private List<Map<String, Object>> getProgressDataForUser(String userId) {
-        List<Progress> progresses = progressRepository.findByUserId(userId);
-        List<Map<String, Object>> data = new ArrayList<>();
-        for (Progress p : progresses) {
-            Map<String, Object> entry = new HashMap<>();
-            entry.put("date", p.getDate().toString());
-            entry.put("painLevel", p.getPainLevel());
-            entry.put("mobility", p.getMobility());
-            entry.put("strength", p.getStrength());
-            data.add(entry);
+    // Optional stages fall back to a default when they fail or miss their own or the overall deadline
+    private <T> T awaitOptional(String stage, CompletableFuture<T> future, long stageTimeoutMs, long deadline,
+                                T fallback, List<String> degradedStages) {
+        long waitMs = Math.max(0, Math.min(stageTimeoutMs, deadline - System.currentTimeMillis()));
+        try {
+            return future.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Stop the work too, so it doesn't hold an LLM permit or spend quota after the response is out;
+            // the scope decides whether its thread may be interrupted
+            future.cancel(false);
+            log.warn("Dashboard stage '{}' missed its {} ms deadline", stage, waitMs);
+        } catch (ExecutionException e) {
+            log.warn("Dashboard stage '{}' failed", stage, e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
         }
-        return data;
+        degradedStages.add(stage);
+        return fallback;
     }
 
-    private int calculateRecoveryPercentage(List<Map<String, Object>> progressData) {
-        if (progressData.isEmpty()) return 0;
-        double avgMobility = progressData.stream()
-            .mapToInt(e -> (int) e.getOrDefault("mobility", 0))
-            .average().orElse(0.0);
-        return (int) Math.round((avgMobility / 10.0) * 100);
+    // The recent window of the user's progress log, oldest first
+    public List<Map<String, Object>> getProgressDataForUser(String userId) {
+        return metrics.time("db.progress", () -> progressService.recent(userId, progressWindow));
     }
-}
\ No newline at end of file
+}
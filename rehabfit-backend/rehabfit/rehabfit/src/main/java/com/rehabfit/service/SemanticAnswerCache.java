@@ -0,0 +1,160 @@
+package com.rehabfit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user cache of generated chat answers, matched by question embedding rather than exact
+ * text. A lookup returns the closest earlier answer of the same kind whose cosine similarity
+ * reaches {@code chat.answer-cache.similarity-threshold}, as long as it was generated against
+ * the user's current context version (see {@link UserContextVersionService}). Entries expire
+ * after {@code ttl-minutes}; each user keeps at most {@code max-entries-per-user} answers and
+ * the least recently used users are dropped beyond {@code max-users}.
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private final boolean enabled;
+    private final double threshold;
+    private final long ttlMillis;
+    private final int maxEntriesPerUser;
+    private final int maxUsers;
+
+    // Access-ordered for LRU eviction of whole users; guarded by "this"
+    private final LinkedHashMap<String, List<Entry>> users = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong savedTokens = new AtomicLong();
+
+    public SemanticAnswerCache(@Value("${chat.answer-cache.enabled:true}") boolean enabled,
+                               @Value("${chat.answer-cache.similarity-threshold:0.95}") double threshold,
+                               @Value("${chat.answer-cache.ttl-minutes:60}") long ttlMinutes,
+                               @Value("${chat.answer-cache.max-entries-per-user:20}") int maxEntriesPerUser,
+                               @Value("${chat.answer-cache.max-users:5000}") int maxUsers) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.maxEntriesPerUser = maxEntriesPerUser;
+        this.maxUsers = maxUsers;
+    }
+
+    /** Returns the cached answer for a sufficiently similar question, or null. */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T lookup(String userId, Kind kind, String contextVersion, float[] embedding) {
+        if (!enabled || !isUsable(embedding)) return null;
+        List<Entry> entries = users.get(userId);
+        Entry best = null;
+        double bestScore = threshold;
+        if (entries != null) {
+            long now = System.currentTimeMillis();
+            Iterator<Entry> it = entries.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.expiresAt < now || !entry.contextVersion.equals(contextVersion)) {
+                    // Stale for every future question too
+                    it.remove();
+                    evictions.incrementAndGet();
+                    continue;
+                }
+                if (entry.kind != kind) continue;
+                double score = cosine(embedding, entry.embedding);
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+        }
+        if (best == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        savedTokens.addAndGet(best.tokens);
+        return (T) best.answer;
+    }
+
+    /**
+     * Stores a freshly generated answer. {@code tokens} is what generating it cost, and is
+     * credited to the saved-token count on every later hit.
+     */
+    public synchronized void put(String userId, Kind kind, String contextVersion, float[] embedding, Object answer, long tokens) {
+        if (!enabled || !isUsable(embedding) || answer == null) return;
+        List<Entry> entries = users.computeIfAbsent(userId, k -> new ArrayList<>());
+        entries.add(new Entry(kind, contextVersion, embedding, answer, tokens, System.currentTimeMillis() + ttlMillis));
+        if (entries.size() > maxEntriesPerUser) {
+            // Oldest first
+            entries.remove(0);
+            evictions.incrementAndGet();
+        }
+        Iterator<Map.Entry<String, List<Entry>>> it = users.entrySet().iterator();
+        while (users.size() > maxUsers && it.hasNext()) {
+            evictions.addAndGet(it.next().getValue().size());
+            it.remove();
+        }
+    }
+
+    public synchronized void invalidate(String userId) {
+        List<Entry> removed = users.remove(userId);
+        if (removed != null) {
+            evictions.addAndGet(removed.size());
+        }
+    }
+
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        invalidate(event.userId());
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getSavedTokens() { return savedTokens.get(); }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (List<Entry> entries : users.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    // The all-zero fallback embedding would match every other fallback; never cache on it
+    private static boolean isUsable(float[] embedding) {
+        if (embedding == null) return false;
+        for (float v : embedding) {
+            if (v != 0f) return true;
+        }
+        return false;
+    }
+
+    static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) return -1;
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? -1 : dot / Math.sqrt(normA * normB);
+    }
+
+    /** Answers from different endpoints have different shapes and prompts, so they never mix. */
+    public enum Kind { RAG, CHAT }
+
+    private record Entry(Kind kind, String contextVersion, float[] embedding, Object answer, long tokens, long expiresAt) {}
+}
@@ -0,0 +1,329 @@
+package com.rehabfit.service;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Owns the lifecycle of SSE chat streams. Streams run on the {@code chatStreamExecutor}, are
+ * tracked while open, get heartbeat comments while quiet, and are closed after
+ * {@code chat.stream.idle-timeout-ms} without data or {@code chat.stream.total-timeout-ms}
+ * overall. Closing a stream for any reason, including the client going away, cancels the
+ * upstream LLM call bound through {@link StreamHandle#bind}.
+ */
+@Service
+public class SseStreamRegistry {
+    private static final Logger log = LoggerFactory.getLogger(SseStreamRegistry.class);
+
+    @Autowired
+    @Qualifier("chatStreamExecutor")
+    private ThreadPoolTaskExecutor chatStreamExecutor;
+
+    @Autowired
+    @Qualifier("chatStreamWriteExecutor")
+    private ThreadPoolTaskExecutor chatStreamWriteExecutor;
+
+    @Value("${chat.stream.total-timeout-ms:300000}")
+    private long totalTimeoutMs;
+
+    @Value("${chat.stream.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${chat.stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${chat.stream.reactive.max-active:5000}")
+    private int maxActiveReactive;
+
+    private final Map<String, StreamHandle> active = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong clientGone = new AtomicLong();
+    private final AtomicLong tokensStreamed = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong firstTokenMsTotal = new AtomicLong();
+    private final AtomicLong firstTokenSamples = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sse-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(heartbeatMs, idleTimeoutMs) / 2);
+        sweeper.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        active.values().forEach(StreamHandle::close);
+    }
+
+    /**
+     * Opens a stream and runs {@code body} for it on the streaming executor. The emitter is
+     * completed when the body returns. Throws 503 when the executor is saturated.
+     */
+    public SseEmitter start(String userId, Consumer<StreamHandle> body) {
+        StreamHandle handle = register(userId);
+        SseEmitter emitter = handle.emitter;
+        try {
+            chatStreamExecutor.execute(() -> {
+                try {
+                    body.accept(handle);
+                    handle.close();
+                } catch (Exception e) {
+                    log.error("Chat stream {} failed", handle.id, e);
+                    handle.cancel();
+                    emitter.completeWithError(e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            active.remove(handle.id);
+            rejected.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many active chat streams, try again shortly");
+        }
+        started.incrementAndGet();
+        return emitter;
+    }
+
+    /**
+     * Opens a stream for a body that only starts asynchronous work and returns; no thread is
+     * reserved for the stream. The body writes through {@link StreamHandle#write} so its sends
+     * stay off I/O threads, and must call {@link StreamHandle#complete()} when done.
+     * Throws 503 once {@code chat.stream.reactive.max-active} streams are open.
+     */
+    public SseEmitter startAsync(String userId, Consumer<StreamHandle> body) {
+        if (active.size() >= maxActiveReactive) {
+            rejected.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many active chat streams, try again shortly");
+        }
+        StreamHandle handle = register(userId);
+        try {
+            body.accept(handle);
+        } catch (RuntimeException e) {
+            log.error("Chat stream {} failed to start", handle.id, e);
+            handle.cancel();
+            handle.emitter.completeWithError(e);
+        }
+        started.incrementAndGet();
+        return handle.emitter;
+    }
+
+    public int getActiveStreams() { return active.size(); }
+    public long getStartedStreams() { return started.get(); }
+    public long getRejectedStreams() { return rejected.get(); }
+    public long getTimedOutStreams() { return timedOut.get(); }
+    public long getClientDisconnects() { return clientGone.get(); }
+    public long getTokensStreamed() { return tokensStreamed.get(); }
+    public long getFramesSent() { return framesSent.get(); }
+
+    public long getAverageTimeToFirstTokenMs() {
+        long samples = firstTokenSamples.get();
+        return samples == 0 ? 0 : firstTokenMsTotal.get() / samples;
+    }
+
+    private StreamHandle register(String userId) {
+        SseEmitter emitter = new SseEmitter(totalTimeoutMs);
+        StreamHandle handle = new StreamHandle(UUID.randomUUID().toString(), userId, emitter);
+
+        emitter.onCompletion(() -> release(handle));
+        emitter.onTimeout(() -> {
+            if (handle.cancel()) timedOut.incrementAndGet();
+            handle.close();
+        });
+        emitter.onError(e -> {
+            if (handle.cancel()) clientGone.incrementAndGet();
+            handle.close();
+        });
+
+        active.put(handle.id, handle);
+        return handle;
+    }
+
+    private void release(StreamHandle handle) {
+        handle.cancel();
+        active.remove(handle.id);
+    }
+
+    // Closes idle streams and keeps the quiet ones alive through proxies
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (StreamHandle handle : active.values()) {
+            if (now - handle.lastDataAt > idleTimeoutMs) {
+                log.warn("Closing chat stream {} for user {} after {} ms without data", handle.id, handle.userId, now - handle.lastDataAt);
+                if (handle.cancel()) timedOut.incrementAndGet();
+                handle.close();
+            } else if (now - handle.lastSendAt >= heartbeatMs && handle.heartbeatPending.compareAndSet(false, true)) {
+                // The write may block on a slow client, so it goes to a writer rather than holding up the sweep
+                try {
+                    chatStreamWriteExecutor.execute(() -> sendHeartbeat(handle));
+                } catch (TaskRejectedException e) {
+                    handle.heartbeatPending.set(false);
+                }
+            }
+        }
+    }
+
+    private void sendHeartbeat(StreamHandle handle) {
+        try {
+            handle.heartbeat();
+        } catch (IOException | IllegalStateException e) {
+            if (handle.cancel()) clientGone.incrementAndGet();
+            handle.close();
+        } finally {
+            handle.heartbeatPending.set(false);
+        }
+    }
+
+    /** One open stream. Sends are serialized, so the body and the heartbeat never interleave. */
+    public final class StreamHandle {
+        private final String id;
+        private final String userId;
+        private final SseEmitter emitter;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final PublishProcessor<Boolean> cancelSignal = PublishProcessor.create();
+        private final AtomicBoolean heartbeatPending = new AtomicBoolean();
+        // Tail of the writes handed off through write(); each runs after the one before it.
+        // Guarded by its own lock so handing off never waits for a send in progress
+        private final Object writeOrder = new Object();
+        private CompletableFuture<Void> writes = CompletableFuture.completedFuture(null);
+        private volatile long lastDataAt = System.currentTimeMillis();
+        private volatile long lastSendAt = lastDataAt;
+
+        private StreamHandle(String id, String userId, SseEmitter emitter) {
+            this.id = id;
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        public String getId() { return id; }
+
+        public boolean isCancelled() { return cancelled.get(); }
+
+        /** Completes the response; also cancels anything still bound to it. */
+        public void complete() {
+            close();
+        }
+
+        // Runs a task for this stream after a delay, e.g. a timed flush of buffered tokens. The
+        // sweeper only keeps the time; the task may block on the client, so it runs on a writer
+        Future<?> schedule(Runnable task, long delayMs) {
+            return sweeper.schedule(() -> {
+                if (cancelled.get()) return;
+                try {
+                    chatStreamWriteExecutor.execute(task);
+                } catch (TaskRejectedException e) {
+                    log.debug("Dropping a timed task of chat stream {}: all stream writers are busy", id);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Runs {@code work}, which writes to this stream, on a stream writer once the work handed
+         * off before it has finished. Lets code on I/O completion threads write without blocking
+         * on a slow client; such a client holds up a writer instead. When every writer is busy
+         * and the queue is full, the work runs on the calling thread.
+         */
+        public void write(Runnable work) {
+            Runnable logged = () -> {
+                try {
+                    work.run();
+                } catch (RuntimeException e) {
+                    log.error("Write to chat stream {} failed", id, e);
+                }
+            };
+            synchronized (writeOrder) {
+                writes = writes.thenRunAsync(logged, task -> {
+                    try {
+                        chatStreamWriteExecutor.execute(task);
+                    } catch (TaskRejectedException e) {
+                        task.run();
+                    }
+                });
+            }
+        }
+
+        /** Sends an event; silently dropped once the stream is closed. */
+        public synchronized void send(SseEmitter.SseEventBuilder event) throws IOException {
+            if (cancelled.get()) return;
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; stop producing for it
+                if (cancel()) clientGone.incrementAndGet();
+                throw e instanceof IOException io ? io : new IOException(e);
+            }
+            lastDataAt = lastSendAt = System.currentTimeMillis();
+        }
+
+        void recordSummary(TokenCoalescer.Summary summary) {
+            tokensStreamed.addAndGet(summary.tokens());
+            framesSent.addAndGet(summary.frames());
+            if (summary.timeToFirstTokenMs() >= 0) {
+                firstTokenMsTotal.addAndGet(summary.timeToFirstTokenMs());
+                firstTokenSamples.incrementAndGet();
+            }
+        }
+
+        /** Ends {@code upstream} as soon as this stream is closed, cancelling the underlying call. */
+        public <T> Flowable<T> bind(Flowable<T> upstream) {
+            // The signal is hot, so a stream closed before subscription never starts the call at all
+            return Flowable.defer(() -> cancelled.get() ? Flowable.<T>empty() : upstream.takeUntil(cancelSignal));
+        }
+
+        private synchronized void heartbeat() throws IOException {
+            if (cancelled.get()) return;
+            emitter.send(SseEmitter.event().comment("keepalive"));
+            lastSendAt = System.currentTimeMillis();
+        }
+
+        // Returns true for the call that actually cancelled the stream
+        private boolean cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                cancelSignal.onNext(Boolean.TRUE);
+                return true;
+            }
+            return false;
+        }
+
+        private void close() {
+            cancel();
+            active.remove(id);
+            try {
+                emitter.complete();
+            } catch (Exception ignored) {
+                // Already completed
+            }
+        }
+    }
+}
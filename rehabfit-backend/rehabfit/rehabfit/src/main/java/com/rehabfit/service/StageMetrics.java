@@ -0,0 +1,105 @@
+package com.rehabfit.service;
+
+import com.rehabfit.config.RequestEndpoint;
+import com.rehabfit.config.RequestTimeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timers for the stages of a request: embedding, vector query and upsert, LLM calls, YouTube
+ * search and database reads. Each is recorded as {@code rag.stage} tagged with the stage, the
+ * endpoint it ran for ({@link RequestEndpoint}) and its outcome. Streamed answers also record
+ * time to first token, token count and token rate. Stages are also added to the request's
+ * {@link RequestTimeline} for its Server-Timing header.
+ */
+@Component
+public class StageMetrics {
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+    /** The stage failed but the caller carried on with a fallback (zero embedding, empty context). */
+    public static final String FALLBACK = "fallback";
+    /** The client went away before the stage finished. */
+    public static final String CANCELLED = "cancelled";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    public <T> T time(String stage, Supplier<T> work) {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = ERROR;
+        try {
+            T result = work.get();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            stop(sample, stage, RequestEndpoint.current(), outcome);
+        }
+    }
+
+    /** Times a stage that completes asynchronously; the endpoint is taken from the calling thread. */
+    public <T> CompletableFuture<T> timeAsync(String stage, Supplier<CompletableFuture<T>> work) {
+        String endpoint = RequestEndpoint.current();
+        RequestTimeline timeline = RequestTimeline.current();
+        Timer.Sample sample = Timer.start(registry);
+        CompletableFuture<T> future;
+        try {
+            future = work.get();
+        } catch (RuntimeException e) {
+            stop(sample, stage, endpoint, ERROR, timeline);
+            throw e;
+        }
+        return future.whenComplete((result, error) -> stop(sample, stage, endpoint, error == null ? SUCCESS : ERROR, timeline));
+    }
+
+    /** For stages whose outcome is only known by the caller; finish with {@link #stop}. */
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stop(Timer.Sample sample, String stage, String endpoint, String outcome) {
+        stop(sample, stage, endpoint, outcome, RequestTimeline.current());
+    }
+
+    private void stop(Timer.Sample sample, String stage, String endpoint, String outcome, RequestTimeline timeline) {
+        long nanos = sample.stop(Timer.builder("rag.stage")
+            .description("Time spent in one stage of a request")
+            .tags("stage", stage, "endpoint", endpoint, "outcome", outcome)
+            .register(registry));
+        if (timeline != null) timeline.add(stage, nanos, outcome);
+    }
+
+    /** Token-level figures for one streamed answer. */
+    void recordStream(String endpoint, String outcome, TokenCoalescer.Summary summary) {
+        Counter.builder("rag.stream.tokens")
+            .description("Tokens streamed to clients")
+            .tags("endpoint", endpoint, "outcome", outcome)
+            .register(registry)
+            .increment(summary.tokens());
+        if (summary.timeToFirstTokenMs() < 0) return;
+
+        Timer.builder("rag.stream.time_to_first_token")
+            .description("Time from the start of an answer stream to its first token")
+            .tags("endpoint", endpoint)
+            .register(registry)
+            .record(summary.timeToFirstTokenMs(), TimeUnit.MILLISECONDS);
+        // Rate over the generation itself, after the first token arrived
+        long generatingMs = summary.durationMs() - summary.timeToFirstTokenMs();
+        if (summary.tokens() > 1 && generatingMs > 0) {
+            DistributionSummary.builder("rag.stream.tokens_per_second")
+                .description("Token rate of streamed answers")
+                .baseUnit("tokens/s")
+                .tags("endpoint", endpoint)
+                .register(registry)
+                .record((summary.tokens() - 1) * 1000.0 / generatingMs);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.rehabfit.service;
+
+import com.theokanning.openai.Usage;
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import io.reactivex.Flowable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline backend that answers with canned content, for local runs and tests.
+ * Enable with {@code llm.backend=stub}; no API key or network access is needed.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.backend", havingValue = "stub")
+public class StubLlmBackend implements LlmBackend {
+
+    static final String DASHBOARD_JSON = "{ \"estimatedRecovery\": \"4 weeks\", "
+            + "\"dietPlan\": [\"Eat more protein\", \"Stay hydrated\"], "
+            + "\"llmSummary\": [\"Mobility is improving. Keep stretching!\"], "
+            + "\"videos\": [{\"title\": \"mobility stretches\"}] }";
+
+    static final String ANSWER = "Here is a **gentle plan** for you:\n- Warm up for 5 minutes\n- Do 3 sets of 10 slow reps\n- Stop if the pain goes above 4/10";
+
+    @Value("${llm.stub.token-delay-ms:0}")
+    private long tokenDelayMs;
+
+    @Override
+    public ChatCompletionResult createChatCompletion(ChatCompletionRequest request) {
+        String content = respond(request);
+
+        ChatCompletionChoice choice = new ChatCompletionChoice();
+        choice.setIndex(0);
+        choice.setMessage(new ChatMessage("assistant", content));
+        choice.setFinishReason("stop");
+
+        Usage usage = new Usage();
+        usage.setCompletionTokens(tokenize(content).size());
+        usage.setTotalTokens(usage.getCompletionTokens());
+
+        ChatCompletionResult result = new ChatCompletionResult();
+        result.setModel(request.getModel());
+        result.setChoices(List.of(choice));
+        result.setUsage(usage);
+        return result;
+    }
+
+    @Override
+    public Flowable<ChatCompletionChunk> streamChatCompletion(ChatCompletionRequest request) {
+        Flowable<String> tokens = Flowable.fromIterable(tokenize(respond(request)));
+        if (tokenDelayMs > 0) {
+            tokens = tokens.concatMap(t -> Flowable.just(t).delay(tokenDelayMs, TimeUnit.MILLISECONDS));
+        }
+        return tokens.map(token -> {
+            ChatCompletionChoice choice = new ChatCompletionChoice();
+            choice.setIndex(0);
+            choice.setMessage(new ChatMessage("assistant", token));
+
+            ChatCompletionChunk chunk = new ChatCompletionChunk();
+            chunk.setModel(request.getModel());
+            chunk.setChoices(List.of(choice));
+            return chunk;
+        });
+    }
+
+    private String respond(ChatCompletionRequest request) {
+        List<ChatMessage> messages = request.getMessages();
+        String prompt = messages.isEmpty() ? "" : messages.get(messages.size() - 1).getContent();
+        return prompt != null && prompt.contains("estimatedRecovery") ? DASHBOARD_JSON : ANSWER;
+    }
+
+    // Split like OpenAI does: each token after the first carries its leading space
+    private static List<String> tokenize(String content) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < content.length(); i++) {
+            if (content.charAt(i) == ' ') {
+                tokens.add(content.substring(start, i));
+                start = i;
+            }
+        }
+        tokens.add(content.substring(start));
+        return tokens;
+    }
+}
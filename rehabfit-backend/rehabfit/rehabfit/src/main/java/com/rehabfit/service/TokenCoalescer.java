@@ -0,0 +1,110 @@
+package com.rehabfit.service;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Buffers streamed LLM tokens and hands them on as larger frames: at most every
+ * {@code flushIntervalMs}, or as soon as {@code flushChars} characters are waiting. The first
+ * token is passed on at once so time-to-first-token does not suffer. Tokens left in the buffer
+ * when the model pauses are flushed by a timer once the interval is up, rather than waiting for
+ * the next token. One instance per stream; the timed flush runs on a thread of the scheduler's
+ * choosing, so the methods are synchronized.
+ */
+final class TokenCoalescer {
+
+    // Characters a token may start with and still be glued to the previous one without a space
+    private static final boolean[] NO_SPACE_BEFORE = new boolean[128];
+
+    static {
+        for (char c : " \t\r\n.,!?;:-*#`[]()_~".toCharArray()) {
+            NO_SPACE_BEFORE[c] = true;
+        }
+    }
+
+    interface FrameSink {
+        void send(String frame) throws IOException;
+    }
+
+    interface FlushScheduler {
+        Future<?> schedule(Runnable task, long delayMs);
+    }
+
+    private final FrameSink sink;
+    private final FlushScheduler scheduler;
+    private final long flushIntervalMs;
+    private final int flushChars;
+    private final StringBuilder buffer;
+
+    private final long startedAt = System.currentTimeMillis();
+    private long lastFlushAt = startedAt;
+    private long firstTokenAt = -1;
+    private int tokens;
+    private int frames;
+    private long chars;
+    private Future<?> timedFlush;
+
+    TokenCoalescer(FrameSink sink, FlushScheduler scheduler, long flushIntervalMs, int flushChars) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushChars = flushChars;
+        this.buffer = new StringBuilder(Math.max(16, flushChars * 2));
+    }
+
+    synchronized void append(String token) throws IOException {
+        if (token == null || token.isEmpty()) return;
+        // OpenAI streaming doesn't always put spaces between word tokens
+        char first = token.charAt(0);
+        if (first >= 128 || !NO_SPACE_BEFORE[first]) {
+            buffer.append(' ');
+        }
+        buffer.append(token);
+        tokens++;
+
+        long now = System.currentTimeMillis();
+        if (firstTokenAt < 0) {
+            firstTokenAt = now;
+            flush(now);
+        } else if (buffer.length() >= flushChars || now - lastFlushAt >= flushIntervalMs) {
+            flush(now);
+        } else if (timedFlush == null) {
+            timedFlush = scheduler.schedule(this::flushOnTimer, flushIntervalMs - (now - lastFlushAt));
+        }
+    }
+
+    /** Sends whatever is still buffered. */
+    synchronized void finish() throws IOException {
+        flush(System.currentTimeMillis());
+    }
+
+    synchronized Summary summary() {
+        long now = System.currentTimeMillis();
+        return new Summary(tokens, frames, chars, firstTokenAt < 0 ? -1 : firstTokenAt - startedAt, now - startedAt);
+    }
+
+    private synchronized void flushOnTimer() {
+        timedFlush = null;
+        try {
+            flush(System.currentTimeMillis());
+        } catch (IOException e) {
+            // The client is gone; the stream is cancelled and its producer stops on its own
+        }
+    }
+
+    private void flush(long now) throws IOException {
+        if (timedFlush != null) {
+            timedFlush.cancel(false);
+            timedFlush = null;
+        }
+        lastFlushAt = now;
+        if (buffer.length() == 0) return;
+        String frame = buffer.toString();
+        buffer.setLength(0);
+        frames++;
+        chars += frame.length();
+        sink.send(frame);
+    }
+
+    record Summary(int tokens, int frames, long chars, long timeToFirstTokenMs, long durationMs) {}
+}
@@ -0,0 +1,62 @@
+package com.rehabfit.service;
+
+import com.rehabfit.dto.UserProfile;
+import com.rehabfit.repository.ProgressRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Computes a short version stamp for everything a user's generated content depends on:
+ * their profile fields and their latest progress entry. Progress is read from the database
+ * and the profile through {@link UserProfileCache}, which is invalidated on every profile
+ * write, so the stamp stays correct after writes and catches up with other nodes within the
+ * cache TTL.
+ */
+@Service
+public class UserContextVersionService {
+
+    @Autowired
+    private UserProfileCache profiles;
+
+    @Autowired
+    private ProgressRepository progressRepository;
+
+    public String versionFor(String userId) {
+        UserProfile user = profiles.findById(userId).orElse(null);
+        ProgressRepository.ProgressVersion progress = progressRepository.findVersionByUserId(userId);
+
+        StringBuilder sb = new StringBuilder();
+        if (user != null) {
+            sb.append(user.name()).append('|')
+              .append(user.injuryType()).append('|')
+              .append(user.fitnessGoal()).append('|')
+              .append(user.injuryDescription()).append('|')
+              .append(user.age()).append('|')
+              .append(user.weight()).append('|')
+              .append(user.height()).append('|')
+              .append(user.activityLevel()).append('|')
+              .append(user.createdAt());
+        }
+        sb.append('#');
+        if (progress != null) {
+            sb.append(progress.getCount()).append('|')
+              .append(progress.getLatestId()).append('|')
+              .append(progress.getLatestDate());
+        }
+        return hash(sb.toString());
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
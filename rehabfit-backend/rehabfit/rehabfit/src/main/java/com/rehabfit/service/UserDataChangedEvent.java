@@ -0,0 +1,10 @@
+package com.rehabfit.service;
+
+/**
+ * Published after a write that changes a user's dashboard or chat inputs
+ * (profile fields or progress entries). Listeners use it to drop cached data for that user.
+ */
+public record UserDataChangedEvent(String userId, Kind kind) {
+
+    public enum Kind { PROFILE, PROGRESS }
+}
@@ -0,0 +1,194 @@
+package com.rehabfit.service;
+
+import com.rehabfit.dto.UserProfile;
+import com.rehabfit.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of {@link UserProfile} snapshots in front of {@link UserRepository},
+ * by id and by email. The profile and its equipment set load in one short read-only
+ * transaction. Entries live for at most {@code user.profile-cache.ttl-seconds} (a bound on
+ * staleness from writes on other nodes) and are dropped on every profile write; a load that
+ * overlapped a write is returned but not cached. Code that modifies a user still loads the
+ * entity from the repository.
+ */
+@Component
+public class UserProfileCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final TransactionTemplate readOnly;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Access-ordered for LRU eviction; both maps guarded by "this"
+    private final LinkedHashMap<Long, Entry> byId = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Long> idByEmail = new HashMap<>();
+    // Bumped by every invalidation, per id stripe and overall; also guarded by "this"
+    private final long[] generations = new long[GENERATION_STRIPES];
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UserProfileCache(PlatformTransactionManager transactionManager,
+                            @Value("${user.profile-cache.max-entries:10000}") int maxEntries,
+                            @Value("${user.profile-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    public Optional<UserProfile> findById(String userId) {
+        return findById(Long.valueOf(userId));
+    }
+
+    public Optional<UserProfile> findById(Long id) {
+        UserProfile cached = lookup(id);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Optional.of(cached);
+        }
+        misses.incrementAndGet();
+        long seen = generationOf(id);
+        UserProfile loaded = readOnly.execute(status -> userRepository.findById(id).map(UserProfile::from).orElse(null));
+        if (loaded != null) storeIfUnchanged(loaded, seen);
+        return Optional.ofNullable(loaded);
+    }
+
+    public Optional<UserProfile> findByEmail(String email) {
+        Long id;
+        synchronized (this) {
+            id = idByEmail.get(email);
+        }
+        if (id != null) {
+            UserProfile cached = lookup(id);
+            if (cached != null && email.equals(cached.email())) {
+                hits.incrementAndGet();
+                return Optional.of(cached);
+            }
+        }
+        misses.incrementAndGet();
+        // The id isn't known before the load, so any invalidation meanwhile keeps the result out
+        long seen;
+        synchronized (this) {
+            seen = generation;
+        }
+        UserProfile loaded = readOnly.execute(status -> userRepository.findByEmail(email).map(UserProfile::from).orElse(null));
+        if (loaded != null) storeIfNothingInvalidated(loaded, seen);
+        return Optional.ofNullable(loaded);
+    }
+
+    /**
+     * Drops the user's snapshot. Inside a transaction it is dropped again after commit. Each drop
+     * bumps the user's generation, so a load that started before it cannot put the old row back.
+     */
+    public void invalidate(Long id) {
+        if (id == null) return;
+        remove(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(id);
+                }
+            });
+        }
+    }
+
+    @EventListener
+    public void onUserDataChanged(UserDataChangedEvent event) {
+        if (event.kind() == UserDataChangedEvent.Kind.PROFILE) {
+            invalidate(Long.valueOf(event.userId()));
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getInvalidations() { return invalidations.get(); }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    private synchronized UserProfile lookup(Long id) {
+        Entry entry = byId.get(id);
+        if (entry == null) return null;
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            byId.remove(id);
+            idByEmail.remove(entry.profile.email(), id);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry.profile;
+    }
+
+    private synchronized long generationOf(Long id) {
+        return generations[stripe(id)];
+    }
+
+    private synchronized void storeIfUnchanged(UserProfile profile, long seen) {
+        if (generations[stripe(profile.id())] == seen) store(profile);
+    }
+
+    private synchronized void storeIfNothingInvalidated(UserProfile profile, long seen) {
+        if (generation == seen) store(profile);
+    }
+
+    private synchronized void store(UserProfile profile) {
+        Entry previous = byId.put(profile.id(), new Entry(profile, System.currentTimeMillis() + ttlMillis));
+        if (previous != null && !previous.profile.email().equals(profile.email())) {
+            idByEmail.remove(previous.profile.email(), profile.id());
+        }
+        idByEmail.put(profile.email(), profile.id());
+        Iterator<Map.Entry<Long, Entry>> it = byId.entrySet().iterator();
+        while (byId.size() > maxEntries && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            idByEmail.remove(eldest.profile.email(), eldest.profile.id());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(Long id) {
+        generations[stripe(id)]++;
+        generation++;
+        Entry entry = byId.remove(id);
+        if (entry != null) {
+            idByEmail.remove(entry.profile.email(), id);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    private static int stripe(Long id) {
+        return Math.floorMod(id.hashCode(), GENERATION_STRIPES);
+    }
+
+    private record Entry(UserProfile profile, long expiresAt) {}
+}
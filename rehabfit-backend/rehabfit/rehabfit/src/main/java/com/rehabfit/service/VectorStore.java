@@ -0,0 +1,63 @@
+package com.rehabfit.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Per-user vector storage used for RAG retrieval. Every vector belongs to exactly one user,
+ * and queries only ever see that user's vectors.
+ * The implementation is picked with {@code vector.store} ({@code pinecone} or {@code local}).
+ */
+public interface VectorStore {
+
+    void upsert(String userId, String id, float[] vector, Map<String, Object> metadata);
+
+    /** Writes several entries, possibly for different users, in as few calls as the backend allows. */
+    default void upsertAll(List<VectorEntry> entries) {
+        for (VectorEntry entry : entries) {
+            upsert(entry.userId(), entry.id(), entry.vector(), entry.metadata());
+        }
+    }
+
+    /**
+     * Returns up to {@code topK} of the user's vectors closest to {@code vector} by cosine
+     * similarity, best first. A non-empty {@code filter} additionally requires each entry to
+     * match the given metadata values exactly.
+     */
+    List<VectorMatch> query(String userId, float[] vector, int topK, Map<String, Object> filter);
+
+    default List<VectorMatch> query(String userId, float[] vector, int topK) {
+        return query(userId, vector, topK, Map.of());
+    }
+
+    /**
+     * Non-blocking variant of {@link #query(String, float[], int)}. The default runs the query
+     * inline, which suits in-process stores; remote stores should override it.
+     */
+    default CompletableFuture<List<VectorMatch>> queryAsync(String userId, float[] vector, int topK) {
+        try {
+            return CompletableFuture.completedFuture(query(userId, vector, topK));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    void delete(String userId, Collection<String> ids);
+
+    void deleteAll();
+
+    /**
+     * Whether the store came up without the vectors it held before the last restart, as an
+     * in-process store does without a snapshot. Fingerprints recorded earlier then describe
+     * documents that are no longer there.
+     */
+    default boolean startedEmpty() {
+        return false;
+    }
+
+    record VectorEntry(String userId, String id, float[] vector, Map<String, Object> metadata) {}
+
+    record VectorMatch(String id, float score, Map<String, Object> metadata) {}
+}
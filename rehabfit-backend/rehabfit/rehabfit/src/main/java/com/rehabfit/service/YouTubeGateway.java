@@ -0,0 +1,262 @@
+package com.rehabfit.service;
+
+import com.rehabfit.config.Upstream;
+import com.rehabfit.config.UpstreamClientRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * YouTube Data API search with a TTL cache, single-flight collapsing of identical queries
+ * and a daily quota budget. Once the budget is down to its reserve, searches are answered
+ * from stale cache entries instead of spending more quota.
+ */
+@Service
+public class YouTubeGateway {
+    private static final Logger log = LoggerFactory.getLogger(YouTubeGateway.class);
+
+    // YouTube quotas reset at midnight Pacific time
+    private static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+
+    static final Map<String, String> QUOTA_EXCEEDED_MARKER = Map.of("title", "YouTube API Quota Exceeded", "url", "");
+
+    @Autowired
+    private UpstreamClientRegistry upstreamClients;
+
+    @Value("${youtube.api.key}")
+    private String youtubeApiKey;
+
+    @Value("${youtube.api.base-url:https://www.googleapis.com/youtube/v3}")
+    private String youtubeBaseUrl;
+
+    @Value("${youtube.cache.ttl-minutes:360}")
+    private long ttlMinutes;
+
+    @Value("${youtube.cache.stale-ttl-minutes:2880}")
+    private long staleTtlMinutes;
+
+    @Value("${youtube.cache.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${youtube.quota.daily-units:10000}")
+    private long dailyQuotaUnits;
+
+    @Value("${youtube.quota.reserve-units:500}")
+    private long reserveUnits;
+
+    @Value("${youtube.quota.search-cost:100}")
+    private long searchCost;
+
+    // Access-ordered for LRU eviction; guarded by "this"
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<List<Map<String, String>>>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleServes = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    private LocalDate quotaDay = LocalDate.now(QUOTA_ZONE);
+    private long quotaUnitsSpentToday;
+
+    public List<Map<String, String>> search(String query, int maxResults) {
+        // Default to 5 results if maxResults is 0 or invalid
+        if (maxResults <= 0) maxResults = 5;
+        String key = normalize(query) + "|" + maxResults;
+
+        Entry entry = lookup(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.freshUntil > now) {
+            hits.incrementAndGet();
+            return entry.videos;
+        }
+
+        CompletableFuture<List<Map<String, String>>> created = new CompletableFuture<>();
+        CompletableFuture<List<Map<String, String>>> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            // An identical query is already on the wire; wait for it instead of spending quota again
+            collapsed.incrementAndGet();
+            return existing.join();
+        }
+
+        // Only the caller that actually goes to YouTube reserves quota
+        if (!tryReserveQuota()) {
+            List<Map<String, String>> videos;
+            if (entry != null) {
+                staleServes.incrementAndGet();
+                videos = entry.videos;
+            } else {
+                log.warn("YouTube quota budget exhausted; no cached results for '{}'", query);
+                videos = List.of(QUOTA_EXCEEDED_MARKER);
+            }
+            created.complete(videos);
+            inFlight.remove(key, created);
+            return videos;
+        }
+
+        misses.incrementAndGet();
+        try {
+            List<Map<String, String>> videos = fetch(query, maxResults);
+            if (videos == null) {
+                // Upstream failed or quota ran out; fall back to whatever we had
+                videos = entry != null ? entry.videos : List.of();
+                if (entry != null) staleServes.incrementAndGet();
+                if (entry == null && isQuotaExhausted()) videos = List.of(QUOTA_EXCEEDED_MARKER);
+            } else {
+                store(key, videos);
+            }
+            created.complete(videos);
+            return videos;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getStaleServes() { return staleServes.get(); }
+    public long getCollapsed() { return collapsed.get(); }
+
+    public synchronized long getQuotaUnitsSpentToday() {
+        rollQuotaDay();
+        return quotaUnitsSpentToday;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Calls the search endpoint. Returns null when the call failed and the caller should
+     * fall back to cached data.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, String>> fetch(String query, int maxResults) {
+        String apiUrl = youtubeBaseUrl + "/search"
+            + "?part=snippet"
+            + "&maxResults=" + maxResults
+            + "&q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
+            + "&type=video"
+            + "&key=" + youtubeApiKey;
+
+        RestTemplate restTemplate = upstreamClients.restTemplate(Upstream.YOUTUBE);
+        List<Map<String, String>> videos = new ArrayList<>();
+
+        try {
+            Map<String, Object> response = restTemplate.getForObject(apiUrl, Map.class);
+
+            if (response == null) {
+                log.warn("YouTube API returned null response");
+                return null;
+            }
+
+            // Check for API errors
+            if (response.containsKey("error")) {
+                log.warn("YouTube API error: {}", response.get("error"));
+                if (String.valueOf(response.get("error")).contains("quotaExceeded")) {
+                    markQuotaExhausted();
+                }
+                return null;
+            }
+
+            List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("items");
+            if (items != null) {
+                for (Map<String, Object> item : items) {
+                    Map<String, Object> id = (Map<String, Object>) item.get("id");
+                    Map<String, Object> snippet = (Map<String, Object>) item.get("snippet");
+                    String videoId = id != null ? (String) id.get("videoId") : null;
+                    String title = snippet != null ? (String) snippet.get("title") : query;
+                    if (videoId != null && !videoId.isEmpty()) {
+                        videos.add(Map.of("title", title, "url", "https://www.youtube.com/watch?v=" + videoId));
+                    }
+                }
+            }
+            log.debug("YouTube API returned {} videos for query: {}", videos.size(), query);
+            return List.copyOf(videos);
+        } catch (HttpClientErrorException e) {
+            log.warn("YouTube API error {}: {}", e.getStatusCode(), e.getResponseBodyAsString());
+            // Check if it's quota exceeded
+            if (e.getStatusCode().value() == 403 && e.getResponseBodyAsString().contains("quotaExceeded")) {
+                markQuotaExhausted();
+            }
+            return null;
+        } catch (Exception e) {
+            log.warn("YouTube API error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized Entry lookup(String key) {
+        Entry entry = cache.get(key);
+        if (entry != null && entry.staleUntil < System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void store(String key, List<Map<String, String>> videos) {
+        long now = System.currentTimeMillis();
+        cache.put(key, new Entry(videos, now + ttlMinutes * 60_000L, now + staleTtlMinutes * 60_000L));
+        Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+        while (cache.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    // Reserve the cost of one search unless that would eat into the reserve
+    private synchronized boolean tryReserveQuota() {
+        rollQuotaDay();
+        if (quotaUnitsSpentToday + searchCost > dailyQuotaUnits - reserveUnits) {
+            return false;
+        }
+        quotaUnitsSpentToday += searchCost;
+        return true;
+    }
+
+    private synchronized void markQuotaExhausted() {
+        rollQuotaDay();
+        quotaUnitsSpentToday = dailyQuotaUnits;
+    }
+
+    private synchronized boolean isQuotaExhausted() {
+        rollQuotaDay();
+        return quotaUnitsSpentToday + searchCost > dailyQuotaUnits - reserveUnits;
+    }
+
+    private void rollQuotaDay() {
+        LocalDate today = LocalDate.now(QUOTA_ZONE);
+        if (!today.equals(quotaDay)) {
+            quotaDay = today;
+            quotaUnitsSpentToday = 0;
+        }
+    }
+
+    private static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private record Entry(List<Map<String, String>> videos, long freshUntil, long staleUntil) {}
+}
@@ -0,0 +1,130 @@
+package com.rehabfit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rehabfit.config.Upstream;
+import com.rehabfit.config.UpstreamClientRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class EmbeddingBatcherTests {
+
+	private static final String URL = "http://embedding.test";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+	private MockRestServiceServer server;
+	private EmbeddingBatcher batcher;
+
+	@BeforeEach
+	void setUp() {
+		RestTemplate restTemplate = new RestTemplate();
+		server = MockRestServiceServer.bindTo(restTemplate).build();
+		UpstreamClientRegistry registry = mock(UpstreamClientRegistry.class);
+		when(registry.restTemplate(Upstream.EMBEDDING)).thenReturn(restTemplate);
+
+		batcher = new EmbeddingBatcher();
+		ReflectionTestUtils.setField(batcher, "upstreamClients", registry);
+		ReflectionTestUtils.setField(batcher, "embeddingServiceUrl", URL);
+		ReflectionTestUtils.setField(batcher, "enabled", true);
+		ReflectionTestUtils.setField(batcher, "maxBatchSize", 2);
+		// Long enough that every test submits all its texts before the first batch closes
+		ReflectionTestUtils.setField(batcher, "lingerMs", 200L);
+		ReflectionTestUtils.setField(batcher, "maxInFlight", 1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		batcher.stop();
+	}
+
+	@Test
+	void splitsQueuedTextsIntoBatchesOfAtMostMaxSize() throws Exception {
+		server.expect(ExpectedCount.times(3), requestTo(URL + "/embed/batch"))
+			.andRespond(request -> {
+				List<String> texts = texts(request);
+				batchSizes.add(texts.size());
+				List<List<Float>> embeddings = new ArrayList<>();
+				for (String text : texts) embeddings.add(List.of((float) text.length()));
+				return withSuccess(mapper.writeValueAsString(Map.of("embeddings", embeddings)), MediaType.APPLICATION_JSON)
+					.createResponse(request);
+			});
+		batcher.start();
+
+		List<CompletableFuture<float[]>> futures = new ArrayList<>();
+		for (String text : List.of("a", "bb", "ccc", "dddd", "eeeee")) futures.add(batcher.submit(text));
+
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(i + 1, futures.get(i).get(5, TimeUnit.SECONDS)[0]);
+		}
+		// Batches may be sent concurrently, so only their sizes are checked, not their order
+		List<Integer> sizes = new ArrayList<>(batchSizes);
+		Collections.sort(sizes);
+		assertEquals(List.of(1, 2, 2), sizes);
+		assertEquals(3, batcher.getBatchesSent());
+		server.verify();
+	}
+
+	@Test
+	void failedBatchFailsEveryWaitingFuture() {
+		server.expect(requestTo(URL + "/embed/batch")).andRespond(withServerError());
+		batcher.start();
+
+		CompletableFuture<float[]> first = batcher.submit("one");
+		CompletableFuture<float[]> second = batcher.submit("two");
+
+		assertThrows(CompletionException.class, first::join);
+		assertThrows(CompletionException.class, second::join);
+		assertEquals(0, batcher.getBatchesSent());
+	}
+
+	@Test
+	void fallsBackToSingleCallsWhenTheBatchRouteIsMissing() {
+		server.expect(requestTo(URL + "/embed/batch")).andRespond(withStatus(HttpStatus.NOT_FOUND));
+		server.expect(ExpectedCount.times(3), requestTo(URL + "/embed"))
+			.andRespond(withSuccess("{\"embedding\":[1.0,2.0]}", MediaType.APPLICATION_JSON));
+		batcher.start();
+
+		CompletableFuture<float[]> first = batcher.submit("one");
+		CompletableFuture<float[]> second = batcher.submit("two");
+		assertEquals(2, first.join().length);
+		assertEquals(2, second.join().length);
+
+		// Later texts skip the batch route altogether
+		assertEquals(2, batcher.submit("three").join().length);
+		server.verify();
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> texts(ClientHttpRequest request) throws IOException {
+		String body = ((MockClientHttpRequest) request).getBodyAsString();
+		return (List<String>) mapper.readValue(body, Map.class).get("texts");
+	}
+}
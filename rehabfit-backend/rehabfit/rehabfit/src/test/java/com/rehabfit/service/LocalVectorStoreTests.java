@@ -0,0 +1,116 @@
+package com.rehabfit.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalVectorStoreTests {
+
+	private static final int DIMENSIONS = 32;
+
+	private LocalVectorStore store;
+
+	@BeforeEach
+	void setUp() {
+		store = newStore(50);
+	}
+
+	@Test
+	void queriesOnlySeeTheUsersOwnVectors() {
+		store.upsert("1", "a", new float[] {1, 0}, Map.of("text", "mine"));
+		store.upsert("2", "b", new float[] {1, 0}, Map.of("text", "theirs"));
+
+		List<VectorStore.VectorMatch> matches = store.query("1", new float[] {1, 0}, 5);
+
+		assertEquals(1, matches.size());
+		assertEquals("a", matches.get(0).id());
+		assertEquals("1", matches.get(0).metadata().get("userId"));
+	}
+
+	@Test
+	void upsertReplacesAndDeleteRemoves() {
+		store.upsert("1", "a", new float[] {1, 0}, Map.of());
+		store.upsert("1", "a", new float[] {0, 1}, Map.of());
+		store.upsert("1", "b", new float[] {1, 0}, Map.of());
+
+		assertEquals(2, store.size("1"));
+		assertEquals("a", store.query("1", new float[] {0, 1}, 1).get(0).id());
+
+		store.delete("1", List.of("a"));
+		List<VectorStore.VectorMatch> matches = store.query("1", new float[] {0, 1}, 5);
+		assertEquals(1, matches.size());
+		assertEquals("b", matches.get(0).id());
+	}
+
+	@Test
+	void metadataFilterNarrowsResults() {
+		store.upsert("1", "p", new float[] {1, 0}, Map.of("type", "progress"));
+		store.upsert("1", "c", new float[] {1, 0}, Map.of("type", "chat"));
+
+		List<VectorStore.VectorMatch> matches = store.query("1", new float[] {1, 0}, 5, Map.of("type", "chat"));
+
+		assertEquals(1, matches.size());
+		assertEquals("c", matches.get(0).id());
+	}
+
+	@Test
+	void graphSearchAgreesWithExactSearchOnLargePartitions() {
+		LocalVectorStore exact = newStore(Integer.MAX_VALUE);
+		Random random = new Random(7);
+		for (int i = 0; i < 1000; i++) {
+			float[] v = randomVector(random);
+			store.upsert("1", "v" + i, v, Map.of());
+			exact.upsert("1", "v" + i, v, Map.of());
+		}
+
+		int hits = 0;
+		for (int q = 0; q < 50; q++) {
+			float[] query = randomVector(random);
+			String expected = exact.query("1", query, 1).get(0).id();
+			if (store.query("1", query, 1).get(0).id().equals(expected)) hits++;
+		}
+		assertTrue(hits >= 45, "recall@1 too low: " + hits + "/50");
+	}
+
+	@Test
+	void snapshotRoundTrip(@TempDir Path dir) {
+		store.upsert("1", "a", new float[] {3, 4}, Map.of("text", "hello"));
+		store.upsert("2", "b", new float[] {0, 1}, Map.of("text", "world"));
+		Path file = dir.resolve("vectors.bin");
+		store.snapshot(file);
+
+		LocalVectorStore restored = newStore(50);
+		restored.restore(file);
+
+		List<VectorStore.VectorMatch> matches = restored.query("1", new float[] {3, 4}, 1);
+		assertEquals("a", matches.get(0).id());
+		assertEquals("hello", matches.get(0).metadata().get("text"));
+		assertEquals(1.0f, matches.get(0).score(), 1e-5);
+		assertEquals(1, restored.size("2"));
+	}
+
+	private static LocalVectorStore newStore(int hnswThreshold) {
+		LocalVectorStore store = new LocalVectorStore();
+		ReflectionTestUtils.setField(store, "hnswThreshold", hnswThreshold);
+		ReflectionTestUtils.setField(store, "hnswM", 16);
+		ReflectionTestUtils.setField(store, "efConstruction", 100);
+		ReflectionTestUtils.setField(store, "efSearch", 64);
+		ReflectionTestUtils.setField(store, "snapshotPath", "");
+		return store;
+	}
+
+	private static float[] randomVector(Random random) {
+		float[] v = new float[DIMENSIONS];
+		for (int i = 0; i < DIMENSIONS; i++) v[i] = (float) random.nextGaussian();
+		return v;
+	}
+}
@@ -0,0 +1,128 @@
+package com.rehabfit.service;
+
+import com.rehabfit.model.Progress;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class ProgressImportServiceTests {
+
+	private final List<Progress> stored = new ArrayList<>();
+
+	private ProgressImportService importer;
+
+	@BeforeEach
+	void setUp() {
+		// The rollup update sees every stored chunk, so it doubles as the record of what was imported
+		ProgressRollupService rollups = mock(ProgressRollupService.class);
+		doAnswer(invocation -> stored.addAll(invocation.getArgument(0))).when(rollups).addAll(anyList());
+
+		importer = new ProgressImportService(mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(importer, "jdbcTemplate", mock(JdbcTemplate.class));
+		ReflectionTestUtils.setField(importer, "rollups", rollups);
+		ReflectionTestUtils.setField(importer, "indexOutbox", mock(IndexOutboxService.class));
+		ReflectionTestUtils.setField(importer, "eventPublisher", mock(ApplicationEventPublisher.class));
+		ReflectionTestUtils.setField(importer, "batchSize", 2);
+		ReflectionTestUtils.setField(importer, "maxRows", 1000L);
+		ReflectionTestUtils.setField(importer, "maxReportedErrors", 100);
+	}
+
+	@Test
+	void csvHeaderAfterByteOrderMarkSetsTheColumnOrder() throws IOException {
+		ProgressImportService.ImportReport report = run(ProgressImportService.Format.CSV,
+			"\uFEFFstrength,Date,mobility,pain_level\n4,2024-03-01,6,2\n\"5\",\"2024-03-02\",7,1\n");
+
+		assertEquals(2, report.imported());
+		assertEquals(0, report.rejected());
+		Progress first = stored.get(0);
+		assertEquals(LocalDate.of(2024, 3, 1), first.getDate());
+		assertEquals(2, first.getPainLevel());
+		assertEquals(6, first.getMobility());
+		assertEquals(4, first.getStrength());
+		assertEquals(LocalDate.of(2024, 3, 2), stored.get(1).getDate());
+	}
+
+	@Test
+	void csvWithoutHeaderUsesTheDefaultColumns() throws IOException {
+		ProgressImportService.ImportReport report = run(ProgressImportService.Format.CSV, "2024-03-01,2,6,4\n");
+
+		assertEquals(1, report.imported());
+		assertEquals(2, stored.get(0).getPainLevel());
+	}
+
+	@Test
+	void csvHeaderWithoutDateColumnIsRejected() {
+		assertThrows(ResponseStatusException.class,
+			() -> run(ProgressImportService.Format.CSV, "painLevel,mobility,strength\n2,6,4\n"));
+		assertTrue(stored.isEmpty());
+	}
+
+	@Test
+	void rowsWithoutValidDateAreReportedByLine() throws IOException {
+		ProgressImportService.ImportReport report = run(ProgressImportService.Format.NDJSON,
+			"{\"date\":\"2024-03-01\",\"painLevel\":2,\"mobility\":6,\"strength\":4}\n"
+				+ "{\"painLevel\":2,\"mobility\":6,\"strength\":4}\n"
+				+ "\n"
+				+ "{\"date\":\"03/01/2024\",\"painLevel\":2,\"mobility\":6,\"strength\":4}\n"
+				+ "not json\n");
+
+		assertEquals(1, report.imported());
+		assertEquals(3, report.rejected());
+		assertEquals(2, report.errors().get(0).line());
+		assertEquals("Missing date", report.errors().get(0).message());
+		assertEquals(4, report.errors().get(1).line());
+		assertEquals("Invalid date '03/01/2024'", report.errors().get(1).message());
+		assertEquals(5, report.errors().get(2).line());
+	}
+
+	@Test
+	void stopsAtMaxRowsAndReportsAtMostMaxErrors() throws IOException {
+		ReflectionTestUtils.setField(importer, "maxRows", 2L);
+		ReflectionTestUtils.setField(importer, "maxReportedErrors", 1);
+
+		ProgressImportService.ImportReport report = run(ProgressImportService.Format.CSV,
+			"bad\nalso bad\n2024-03-01,2,6,4\n2024-03-02,2,6,4\n2024-03-03,2,6,4\n");
+
+		assertEquals(2, report.imported());
+		assertEquals(2, report.rejected());
+		assertEquals(1, report.errors().size());
+		assertTrue(report.truncated());
+	}
+
+	@Test
+	void plainTextIsReadAsCsvOrNdjsonFromItsFirstLine() throws IOException {
+		ProgressImportService.ImportReport csv = run(ProgressImportService.Format.DETECT,
+			"date,painLevel,mobility,strength\n2024-03-01,2,6,4\n");
+		ProgressImportService.ImportReport ndjson = run(ProgressImportService.Format.DETECT,
+			"{\"date\":\"2024-03-02\",\"painLevel\":2,\"mobility\":6,\"strength\":4}\n");
+
+		assertEquals(1, csv.imported());
+		assertEquals(0, csv.rejected());
+		assertEquals(1, ndjson.imported());
+		assertFalse(ndjson.truncated());
+		assertEquals(LocalDate.of(2024, 3, 2), stored.get(1).getDate());
+	}
+
+	private ProgressImportService.ImportReport run(ProgressImportService.Format format, String body) throws IOException {
+		return importer.importProgress("user-1", new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), format, false);
+	}
+}
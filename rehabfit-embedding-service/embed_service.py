@@ -12,5 +12,13 @@ def embed():
     embedding = model.encode(text).tolist()
     return jsonify({'embedding': embedding})
 
+# Batched variant used by the backend's EmbeddingBatcher; one encode() call for many texts
+@app.route('/embed/batch', methods=['POST'])
+def embed_batch():
+    data = request.json
+    texts = data['texts']
+    embeddings = model.encode(texts, batch_size=len(texts) or 1).tolist()
+    return jsonify({'embeddings': embeddings})
+
 if __name__ == '__main__':
     app.run(host="0.0.0.0", port=5005)
\ No newline at end of file